@@ -0,0 +1,81 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.loadtest;
+
+import com.google.sps.servlets.CommentBatchServlet;
+import com.google.sps.servlets.CommentDeleteServlet;
+import com.google.sps.servlets.CommentSearchServlet;
+import com.google.sps.servlets.CommentServlet;
+import com.google.sps.servlets.CommentStatsServlet;
+import com.google.sps.servlets.CommentStreamServlet;
+import com.google.sps.servlets.CommentsServlet;
+import com.google.sps.servlets.CountryDataServlet;
+import java.io.File;
+import javax.servlet.http.HttpServlet;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+
+/**
+ * The portfolio's servlets running in an embedded Tomcat on a free local port. Servlets are
+ * registered by hand rather than by scanning for @WebServlet, so the mappings below must be kept
+ * in step with the annotations.
+ */
+final class EmbeddedServer {
+  private final Tomcat tomcat = new Tomcat();
+
+  /**
+   * @param webappDir The portfolio's src/main/webapp directory. Servlets read files such as
+   *     /WEB-INF/country-data.csv from it.
+   * @param workDir A scratch directory for Tomcat's own files.
+   */
+  EmbeddedServer(File webappDir, File workDir) {
+    tomcat.setBaseDir(workDir.getAbsolutePath());
+    tomcat.setPort(0);
+    tomcat.getConnector();
+
+    Context context = tomcat.addContext("", webappDir.getAbsolutePath());
+    addServlet(context, new CommentServlet(), "/comment/*", false);
+    addServlet(context, new CommentsServlet(), "/comments", false);
+    addServlet(context, new CommentBatchServlet(), "/comments/batch", false);
+    addServlet(context, new CommentDeleteServlet(), "/comments/delete", false);
+    addServlet(context, new CommentSearchServlet(), "/comments/search", false);
+    addServlet(context, new CommentStatsServlet(), "/comments/stats", false);
+    addServlet(context, new CommentStreamServlet(), "/comments/stream", true);
+    addServlet(context, new CountryDataServlet(), "/country-data", false);
+  }
+
+  private static void addServlet(Context context, HttpServlet servlet, String pattern,
+      boolean asyncSupported) {
+    String name = servlet.getClass().getSimpleName();
+    Wrapper wrapper = Tomcat.addServlet(context, name, servlet);
+    wrapper.setAsyncSupported(asyncSupported);
+    wrapper.setLoadOnStartup(1);
+    context.addServletMappingDecoded(pattern, name);
+  }
+
+  /** Starts the server and returns the port it is listening on. */
+  int start() throws LifecycleException {
+    tomcat.start();
+    return tomcat.getConnector().getLocalPort();
+  }
+
+  /** Stops the server. Servlets are destroyed, which also closes the comment store. */
+  void stop() throws LifecycleException {
+    tomcat.stop();
+    tomcat.destroy();
+  }
+}
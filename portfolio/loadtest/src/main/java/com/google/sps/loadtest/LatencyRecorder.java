@@ -0,0 +1,99 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.loadtest;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The latencies and errors of one endpoint as seen by one worker. Each worker owns its recorders,
+ * so recording needs no locking; recorders are merged once the run is over.
+ */
+final class LatencyRecorder {
+  private long[] nanos = new long[1024];
+  private int count = 0;
+  private int errors = 0;
+
+  /** Records a request that took {@code elapsedNanos}, whether or not it succeeded. */
+  void record(long elapsedNanos, boolean succeeded) {
+    if (count == nanos.length) {
+      nanos = Arrays.copyOf(nanos, count * 2);
+    }
+    nanos[count++] = elapsedNanos;
+    if (!succeeded) {
+      errors++;
+    }
+  }
+
+  /** Combines the recorders of every worker and sorts the latencies for the percentiles. */
+  static Summary summarize(Collection<LatencyRecorder> recorders, long elapsedNanos) {
+    int total = 0;
+    int errors = 0;
+    for (LatencyRecorder recorder : recorders) {
+      total += recorder.count;
+      errors += recorder.errors;
+    }
+
+    long[] all = new long[total];
+    int offset = 0;
+    for (LatencyRecorder recorder : recorders) {
+      System.arraycopy(recorder.nanos, 0, all, offset, recorder.count);
+      offset += recorder.count;
+    }
+    Arrays.sort(all);
+    return new Summary(all, errors, elapsedNanos);
+  }
+
+  /** The merged latencies of one endpoint over the measured part of a run. */
+  static final class Summary {
+    private final long[] sortedNanos;
+    private final int errors;
+    private final long elapsedNanos;
+
+    private Summary(long[] sortedNanos, int errors, long elapsedNanos) {
+      this.sortedNanos = sortedNanos;
+      this.errors = errors;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    int requests() {
+      return sortedNanos.length;
+    }
+
+    int errors() {
+      return errors;
+    }
+
+    double requestsPerSecond() {
+      return sortedNanos.length * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Returns the latency in milliseconds that {@code fraction} of the requests were at least as
+     * fast as, using the nearest-rank method.
+     */
+    double percentileMillis(double fraction) {
+      if (sortedNanos.length == 0) {
+        return 0;
+      }
+      int rank = (int) Math.ceil(fraction * sortedNanos.length);
+      return sortedNanos[Math.max(rank - 1, 0)] / 1e6;
+    }
+
+    double maxMillis() {
+      return sortedNanos.length == 0 ? 0 : sortedNanos[sortedNanos.length - 1] / 1e6;
+    }
+  }
+}
@@ -0,0 +1,345 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.loadtest;
+
+import com.google.sps.data.Comment;
+import com.google.sps.storage.CommentRepositories;
+import com.google.sps.storage.CommentRepository;
+import com.google.sps.storage.LogCommentRepository;
+import com.google.sps.storage.WriteBehindCommentRepository;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Drives a mixed read/write workload against the portfolio's servlets and reports the latency
+ * percentiles and throughput of every endpoint. The servlets run in an embedded Tomcat, and
+ * comments are kept in a LogCommentRepository in a temporary directory instead of Datastore.
+ *
+ * <p>Options are given as --name=value:
+ * <ul>
+ *   <li>--threads: the number of concurrent clients (16)
+ *   <li>--duration: seconds to measure for (30)
+ *   <li>--warmup: seconds to run before measuring (5)
+ *   <li>--comments: comments stored before the run starts (10000)
+ *   <li>--mix: the relative weight of each endpoint (feed:60,post:10,search:15,stats:5,
+ *       countries:10). country-lookup, which asks for the countries of one language, can be
+ *       added as well.
+ *   <li>--write-behind: put a WriteBehindCommentRepository in front of the log (false)
+ *   <li>--seed: the seed of the clients' random choices (42)
+ * </ul>
+ */
+public final class LoadTest {
+  private static final String[] WORDS = {
+    "hello", "great", "site", "portfolio", "maps", "country", "language", "travel", "photos",
+    "project", "java", "servlet", "comment", "love", "design", "blog", "nice", "work", "thanks",
+    "google"
+  };
+
+  private static final String[] LANGUAGES = {
+    "english", "french", "spanish", "arabic", "portuguese", "german", "russian", "swahili"
+  };
+
+  /** An endpoint and how a client exercises it. */
+  enum Endpoint {
+    FEED("feed") {
+      @Override
+      boolean call(String base, Random random) throws IOException {
+        return get(base + "/comments?num-comments=20");
+      }
+    },
+    POST("post") {
+      @Override
+      boolean call(String base, Random random) throws IOException {
+        return post(base + "/comment", "new-comment=" + encode(sentence(random)));
+      }
+    },
+    SEARCH("search") {
+      @Override
+      boolean call(String base, Random random) throws IOException {
+        return get(base + "/comments/search?q=" + encode(WORDS[random.nextInt(WORDS.length)]));
+      }
+    },
+    STATS("stats") {
+      @Override
+      boolean call(String base, Random random) throws IOException {
+        return get(base + "/comments/stats?days=7");
+      }
+    },
+    COUNTRIES("countries") {
+      @Override
+      boolean call(String base, Random random) throws IOException {
+        return get(base + "/country-data");
+      }
+    },
+    COUNTRY_LOOKUP("country-lookup") {
+      @Override
+      boolean call(String base, Random random) throws IOException {
+        return get(base + "/country-data?language="
+            + LANGUAGES[random.nextInt(LANGUAGES.length)]);
+      }
+    };
+
+    private final String label;
+
+    Endpoint(String label) {
+      this.label = label;
+    }
+
+    /** Sends one request and returns whether it succeeded. */
+    abstract boolean call(String base, Random random) throws IOException;
+
+    static Endpoint fromLabel(String label) {
+      for (Endpoint endpoint : values()) {
+        if (endpoint.label.equals(label)) {
+          return endpoint;
+        }
+      }
+      throw new IllegalArgumentException("Unknown endpoint: " + label);
+    }
+  }
+
+  private LoadTest() {
+    // Disallow instances.
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = parseOptions(args);
+    int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+    long durationNanos = Long.parseLong(options.getOrDefault("duration", "30")) * 1_000_000_000L;
+    long warmupNanos = Long.parseLong(options.getOrDefault("warmup", "5")) * 1_000_000_000L;
+    int comments = Integer.parseInt(options.getOrDefault("comments", "10000"));
+    Map<Endpoint, Integer> mix =
+        parseMix(options.getOrDefault("mix", "feed:60,post:10,search:15,stats:5,countries:10"));
+    boolean writeBehind = Boolean.parseBoolean(options.getOrDefault("write-behind", "false"));
+    long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+    Path workDir = Files.createTempDirectory("sps-loadtest");
+    CommentRepository store = new LogCommentRepository(workDir.resolve("comments.log"));
+    seedComments(store, comments, new Random(seed));
+    if (writeBehind) {
+      store = new WriteBehindCommentRepository(store, 10_000, 500, 5);
+    }
+    CommentRepositories.set(store);
+
+    EmbeddedServer server =
+        new EmbeddedServer(findWebappDir(), workDir.resolve("tomcat").toFile());
+    String base = "http://localhost:" + server.start();
+    System.out.printf("Serving on %s with %d comments, %d clients, mix %s%n", base, comments,
+        threads, mix);
+
+    List<Map<Endpoint, LatencyRecorder>> results = new ArrayList<>();
+    List<Thread> workers = new ArrayList<>();
+    long start = System.nanoTime() + warmupNanos;
+    long end = start + durationNanos;
+
+    for (int i = 0; i < threads; i++) {
+      Map<Endpoint, LatencyRecorder> recorders = new EnumMap<>(Endpoint.class);
+      for (Endpoint endpoint : Endpoint.values()) {
+        recorders.put(endpoint, new LatencyRecorder());
+      }
+      results.add(recorders);
+
+      Random random = new Random(seed + i + 1);
+      Thread worker = new Thread(() -> runClient(base, mix, random, recorders, start, end),
+          "loadtest-client-" + i);
+      workers.add(worker);
+      worker.start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    server.stop();
+    report(results, mix, durationNanos);
+  }
+
+  private static void runClient(String base, Map<Endpoint, Integer> mix, Random random,
+      Map<Endpoint, LatencyRecorder> recorders, long start, long end) {
+    Endpoint[] choices = weightedChoices(mix);
+
+    while (true) {
+      Endpoint endpoint = choices[random.nextInt(choices.length)];
+      long before = System.nanoTime();
+      if (before >= end) {
+        return;
+      }
+
+      boolean succeeded;
+      try {
+        succeeded = endpoint.call(base, random);
+      } catch (IOException e) {
+        succeeded = false;
+      }
+      long after = System.nanoTime();
+
+      // Requests that started during the warm-up are not measured.
+      if (before >= start && after <= end) {
+        recorders.get(endpoint).record(after - before, succeeded);
+      }
+    }
+  }
+
+  /** Expands the mix into an array in which each endpoint appears as often as its weight. */
+  private static Endpoint[] weightedChoices(Map<Endpoint, Integer> mix) {
+    List<Endpoint> choices = new ArrayList<>();
+    for (Map.Entry<Endpoint, Integer> entry : mix.entrySet()) {
+      for (int i = 0; i < entry.getValue(); i++) {
+        choices.add(entry.getKey());
+      }
+    }
+    return choices.toArray(new Endpoint[0]);
+  }
+
+  private static void report(List<Map<Endpoint, LatencyRecorder>> results,
+      Map<Endpoint, Integer> mix, long durationNanos) {
+    System.out.printf("%-14s %9s %7s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "errors",
+        "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+
+    for (Endpoint endpoint : mix.keySet()) {
+      List<LatencyRecorder> recorders = new ArrayList<>();
+      for (Map<Endpoint, LatencyRecorder> result : results) {
+        recorders.add(result.get(endpoint));
+      }
+      LatencyRecorder.Summary summary = LatencyRecorder.summarize(recorders, durationNanos);
+      System.out.printf("%-14s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", endpoint.label,
+          summary.requests(), summary.errors(), summary.requestsPerSecond(),
+          summary.percentileMillis(0.50), summary.percentileMillis(0.99),
+          summary.percentileMillis(0.999), summary.maxMillis());
+    }
+  }
+
+  private static void seedComments(CommentRepository store, int count, Random random)
+      throws IOException {
+    long now = System.currentTimeMillis();
+    List<Comment> batch = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      // Spread the comments over the last 30 days so the stats have something to count.
+      long timestamp = now - (long) (random.nextDouble() * 30 * 24 * 60 * 60 * 1000);
+      batch.add(new Comment(0, sentence(random), timestamp));
+      if (batch.size() == 500) {
+        store.addAll(batch);
+        batch.clear();
+      }
+    }
+    store.addAll(batch);
+  }
+
+  private static String sentence(Random random) {
+    StringBuilder sentence = new StringBuilder();
+    int length = 3 + random.nextInt(10);
+    for (int i = 0; i < length; i++) {
+      if (i > 0) {
+        sentence.append(' ');
+      }
+      sentence.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return sentence.toString();
+  }
+
+  private static boolean get(String url) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    return finish(connection);
+  }
+
+  private static boolean post(String url, String form) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(form.getBytes(StandardCharsets.UTF_8));
+    }
+    return finish(connection);
+  }
+
+  /**
+   * Reads the whole response so that the time includes the body and the connection can be kept
+   * alive. Redirects, like the one after posting a comment, count as success and are not followed.
+   */
+  private static boolean finish(HttpURLConnection connection) throws IOException {
+    connection.setInstanceFollowRedirects(false);
+    int status = connection.getResponseCode();
+    InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+    if (body != null) {
+      try (InputStream in = body) {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) != -1) {
+          // Discard the body.
+        }
+      }
+    }
+    return status < 400;
+  }
+
+  private static String encode(String value) throws IOException {
+    return URLEncoder.encode(value, "UTF-8");
+  }
+
+  private static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        throw new IllegalArgumentException("Expected --name=value but got " + arg);
+      }
+      int equals = arg.indexOf('=');
+      if (equals < 0) {
+        options.put(arg.substring(2), "true");
+      } else {
+        options.put(arg.substring(2, equals), arg.substring(equals + 1));
+      }
+    }
+    return options;
+  }
+
+  private static Map<Endpoint, Integer> parseMix(String mix) {
+    Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+    for (String part : mix.split(",")) {
+      String[] labelAndWeight = part.split(":", 2);
+      int weight = Integer.parseInt(labelAndWeight[1].trim());
+      if (weight > 0) {
+        weights.put(Endpoint.fromLabel(labelAndWeight[0].trim()), weight);
+      }
+    }
+    if (weights.isEmpty()) {
+      throw new IllegalArgumentException("The mix must give some endpoint a positive weight");
+    }
+    return weights;
+  }
+
+  /** Finds src/main/webapp whether the load test is run from portfolio/ or portfolio/loadtest/. */
+  private static File findWebappDir() {
+    for (String candidate : new String[] {"../src/main/webapp", "src/main/webapp"}) {
+      File dir = new File(candidate);
+      if (new File(dir, "WEB-INF/country-data.csv").exists()) {
+        return dir;
+      }
+    }
+    throw new IllegalStateException("Run the load test from the portfolio or loadtest directory");
+  }
+}
@@ -25,4 +25,16 @@ public final class Comment {
     this.content = content;
     this.timestamp = timestamp;
   }
-}
\ No newline at end of file
+
+  public long getId() {
+    return id;
+  }
+
+  public String getContent() {
+    return content;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+}
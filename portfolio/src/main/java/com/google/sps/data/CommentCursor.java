@@ -0,0 +1,71 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+ * Marks where a page of comments ended. Comments are listed newest first, and comments posted in
+ * the same millisecond are listed by increasing id, so the timestamp and id of the last comment on
+ * a page are enough to find where the next page starts without reading the earlier pages again.
+ */
+public final class CommentCursor {
+
+  private final long timestamp;
+  private final long id;
+
+  public CommentCursor(long timestamp, long id) {
+    this.timestamp = timestamp;
+    this.id = id;
+  }
+
+  /** Returns a cursor pointing just past the given comment. */
+  public static CommentCursor after(Comment comment) {
+    return new CommentCursor(comment.getTimestamp(), comment.getId());
+  }
+
+  /**
+   * Parses a cursor produced by {@link #toString()}. Returns null if there is no cursor, which
+   * means the first page is wanted.
+   */
+  public static CommentCursor parse(String token) throws IllegalArgumentException {
+    if (token == null || token.isEmpty()) {
+      return null;
+    }
+
+    String[] parts = token.split("\\.", 2);
+    if (parts.length < 2) {
+      throw new IllegalArgumentException("Malformed comment cursor '" + token + "'");
+    }
+
+    return new CommentCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  /** Returns true if a comment with the given timestamp and id belongs on a later page. */
+  public boolean isPast(long commentTimestamp, long commentId) {
+    return commentTimestamp < timestamp || (commentTimestamp == timestamp && commentId > id);
+  }
+
+  @Override
+  public String toString() {
+    return timestamp + "." + id;
+  }
+}
@@ -23,4 +23,12 @@ public class Country {
     this.country = country;
     this.language = language;
   }
+
+  public String getCountry() {
+    return country;
+  }
+
+  public String getLanguage() {
+    return language;
+  }
 }
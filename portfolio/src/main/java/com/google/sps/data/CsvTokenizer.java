@@ -0,0 +1,149 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits CSV text into records and fields in a single forward pass. Fields are appended to a
+ * StringBuilder owned by the caller, so reading a field does not create any objects. Quoted fields
+ * may hold commas, line breaks and doubled quotes. A quote in the middle of an unquoted field is
+ * kept as it is, which is how the hand-edited data files in this project are written.
+ *
+ * <p>While a field is copied, text in square brackets (Wikipedia footnotes such as [12]) and in
+ * parentheses can be dropped as well, so no further pass over the field is needed.
+ */
+public final class CsvTokenizer {
+  /** Drops text in square brackets, along with the brackets. */
+  public static final int STRIP_FOOTNOTES = 1;
+
+  /** Drops text in parentheses, along with the parentheses. */
+  public static final int STRIP_PARENTHESES = 2;
+
+  private final CharBuffer input;
+  private final int end;
+  private int position = 0;
+
+  // Whether the last field read ended its record. Before the first record there is no current
+  // record, so there are no fields left to read.
+  private boolean endOfRecord = true;
+  private boolean started = false;
+
+  public CsvTokenizer(CharBuffer input) {
+    this.input = input.slice();
+    this.end = this.input.limit();
+  }
+
+  /**
+   * Decodes UTF-8 bytes, for example from a memory-mapped file, and tokenizes the text.
+   */
+  public static CsvTokenizer fromUtf8(ByteBuffer bytes) {
+    return new CsvTokenizer(StandardCharsets.UTF_8.decode(bytes));
+  }
+
+  /** Reads all of {@code in} as UTF-8 and tokenizes the text. The stream is not closed. */
+  public static CsvTokenizer fromUtf8(InputStream in) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      bytes.write(buffer, 0, read);
+    }
+    return fromUtf8(ByteBuffer.wrap(bytes.toByteArray()));
+  }
+
+  /**
+   * Moves to the start of the next record, skipping any fields of the current record that were
+   * not read. Returns false when there are no more records.
+   */
+  public boolean nextRecord() {
+    if (started) {
+      while (!endOfRecord) {
+        nextField(null, 0);
+      }
+    }
+    started = true;
+
+    if (position >= end) {
+      return false;
+    }
+    endOfRecord = false;
+    return true;
+  }
+
+  /**
+   * Appends the next field of the current record to {@code out}, leaving out the asides selected
+   * by {@code strip} ({@link #STRIP_FOOTNOTES} and {@link #STRIP_PARENTHESES}). An aside that is
+   * never closed runs to the end of the field. Returns false, without appending anything, when the
+   * record has no more fields.
+   *
+   * @param out Where the field is appended, or null to skip the field.
+   */
+  public boolean nextField(StringBuilder out, int strip) {
+    if (endOfRecord) {
+      return false;
+    }
+
+    boolean stripFootnotes = (strip & STRIP_FOOTNOTES) != 0;
+    boolean stripParentheses = (strip & STRIP_PARENTHESES) != 0;
+    int bracketDepth = 0;
+    int parenthesisDepth = 0;
+
+    boolean quoted = position < end && input.get(position) == '"';
+    if (quoted) {
+      position++;
+    }
+
+    while (position < end) {
+      char c = input.get(position++);
+
+      if (quoted) {
+        if (c == '"') {
+          if (position < end && input.get(position) == '"') {
+            // A doubled quote stands for one quote.
+            position++;
+          } else {
+            quoted = false;
+            continue;
+          }
+        }
+      } else if (c == ',') {
+        return true;
+      } else if (c == '\n' || c == '\r') {
+        if (c == '\r' && position < end && input.get(position) == '\n') {
+          position++;
+        }
+        endOfRecord = true;
+        return true;
+      }
+
+      if (stripFootnotes && (c == '[' || c == ']')) {
+        bracketDepth = c == '[' ? bracketDepth + 1 : Math.max(bracketDepth - 1, 0);
+      } else if (stripParentheses && (c == '(' || c == ')')) {
+        parenthesisDepth = c == '(' ? parenthesisDepth + 1 : Math.max(parenthesisDepth - 1, 0);
+      } else if (out != null && bracketDepth == 0 && parenthesisDepth == 0) {
+        out.append(c);
+      }
+    }
+
+    endOfRecord = true;
+    return true;
+  }
+}
@@ -0,0 +1,45 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import java.io.IOException;
+import javax.servlet.http.HttpServletResponse;
+
+/** Guards the servlets that only the app's admins may use, such as bulk imports and deletes. */
+final class Admins {
+
+  private Admins() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns true if the signed-in user is an admin of the app. Otherwise sends a 401 (not signed
+   * in) or 403 (not an admin) and returns false, and the caller should stop.
+   */
+  static boolean check(HttpServletResponse response) throws IOException {
+    UserService userService = UserServiceFactory.getUserService();
+    if (!userService.isUserLoggedIn()) {
+      response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Sign in as an admin first.");
+      return false;
+    }
+    if (!userService.isUserAdmin()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN, "Only admins may do this.");
+      return false;
+    }
+    return true;
+  }
+}
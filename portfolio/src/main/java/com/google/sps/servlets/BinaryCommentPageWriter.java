@@ -0,0 +1,125 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentCursor;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes a page of comments in a compact binary form for slow connections. js/comments-binary.js
+ * reads it. The layout is:
+ *
+ *   version  1 byte, currently 1
+ *   flags    1 byte, bit 0 set if content may refer back to earlier content
+ *   then for every comment:
+ *     0x01, id - previous id, timestamp - previous timestamp, content
+ *   and at the end:
+ *     0x00, cursor
+ *
+ * Numbers are zigzag-encoded varints, and the differences start from zero. Content is a varint
+ * header h: 0 means no content, an odd h refers back to the (h >> 1)th distinct content written
+ * earlier in the page, and an even h is followed by (h >> 1) - 1 bytes of UTF-8. The cursor is a
+ * varint length plus one (0 when there is no next page) followed by its UTF-8 bytes.
+ */
+final class BinaryCommentPageWriter implements CommentPageWriter {
+
+  static final String CONTENT_TYPE = "application/x-sps-comments";
+
+  private static final int VERSION = 1;
+  private static final int FLAG_BACK_REFERENCES = 1;
+  private static final int TAG_END = 0;
+  private static final int TAG_COMMENT = 1;
+
+  private final OutputStream out;
+  private final boolean backReferences;
+  private final Map<String, Integer> earlierContent = new HashMap<>();
+  private long previousId = 0;
+  private long previousTimestamp = 0;
+
+  /**
+   * @param backReferences Whether repeated content is sent once and referred back to after that.
+   *     This pays off on pages with many identical comments, such as spam waves.
+   */
+  BinaryCommentPageWriter(OutputStream out, boolean backReferences) throws IOException {
+    this.out = new BufferedOutputStream(out);
+    this.backReferences = backReferences;
+    this.out.write(VERSION);
+    this.out.write(backReferences ? FLAG_BACK_REFERENCES : 0);
+  }
+
+  @Override
+  public void write(Comment comment) throws IOException {
+    out.write(TAG_COMMENT);
+    writeSignedVarint(comment.getId() - previousId);
+    writeSignedVarint(comment.getTimestamp() - previousTimestamp);
+    previousId = comment.getId();
+    previousTimestamp = comment.getTimestamp();
+
+    String content = comment.getContent();
+    if (content == null) {
+      writeVarint(0);
+      return;
+    }
+
+    Integer earlier = backReferences ? earlierContent.get(content) : null;
+    if (earlier != null) {
+      writeVarint(((long) earlier << 1) | 1);
+      return;
+    }
+    if (backReferences) {
+      earlierContent.put(content, earlierContent.size());
+    }
+
+    byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+    writeVarint((bytes.length + 1L) << 1);
+    out.write(bytes);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void finish(CommentCursor next) throws IOException {
+    out.write(TAG_END);
+    if (next == null) {
+      writeVarint(0);
+    } else {
+      byte[] bytes = next.toString().getBytes(StandardCharsets.UTF_8);
+      writeVarint(bytes.length + 1L);
+      out.write(bytes);
+    }
+    out.flush();
+  }
+
+  private void writeSignedVarint(long value) throws IOException {
+    writeVarint((value << 1) ^ (value >> 63));
+  }
+
+  private void writeVarint(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+}
@@ -0,0 +1,106 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import com.google.sps.data.Comment;
+import com.google.sps.storage.CommentRepositories;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that stores many comments in one request, for imports and migrations. The body is a JSON
+ * array of {"content": ..., "timestamp": ...} objects; the timestamp is optional and defaults to
+ * now. The response lists the ids of the stored comments in the same order.
+ *
+ * Only admins may import comments, and at most MAX_COMMENTS at a time.
+ */
+@WebServlet("/comments/batch")
+public class CommentBatchServlet extends HttpServlet {
+
+  /**
+   * The most comments one request may store: four Datastore batches of 500, which the repository
+   * puts in parallel.
+   */
+  static final int MAX_COMMENTS = 2_000;
+
+  /** A comment as it is sent to this servlet. */
+  private static class NewComment {
+    private String content;
+    private Long timestamp;
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!Admins.check(response)) {
+      return;
+    }
+
+    Gson gson = new Gson();
+    long now = System.currentTimeMillis();
+    List<Comment> comments = new ArrayList<>();
+
+    // The array is read one comment at a time, so an oversized import is refused without reading
+    // all of it.
+    try (JsonReader reader = new JsonReader(request.getReader())) {
+      reader.beginArray();
+      while (reader.hasNext()) {
+        if (comments.size() == MAX_COMMENTS) {
+          response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+              "At most " + MAX_COMMENTS + " comments can be imported at a time.");
+          return;
+        }
+
+        NewComment newComment = reader.peek() == JsonToken.NULL
+            ? null : gson.fromJson(reader, NewComment.class);
+        if (newComment == null || newComment.content == null || newComment.content.isEmpty()) {
+          response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Every comment needs content.");
+          return;
+        }
+
+        long timestamp = newComment.timestamp == null ? now : newComment.timestamp;
+        comments.add(new Comment(0, newComment.content, timestamp));
+      }
+      reader.endArray();
+    } catch (IllegalStateException | JsonParseException | MalformedJsonException
+        | EOFException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected an array of comments.");
+      return;
+    }
+
+    List<Comment> stored = CommentRepositories.get().addAll(comments);
+
+    long[] ids = new long[stored.size()];
+    for (int i = 0; i < ids.length; i++) {
+      Comment comment = stored.get(i);
+      ids[i] = comment.getId();
+      CommentCache.add(comment);
+      CommentSearchIndex.add(comment);
+    }
+
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(ids));
+  }
+}
@@ -0,0 +1,228 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.utils.SystemProperty;
+import com.google.gson.Gson;
+import com.google.sps.data.Comment;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * Pushes new comments to every open comment stream as server-sent events. Writes are non-blocking,
+ * so a slow client never holds up the thread that posted the comment. A client that falls too far
+ * behind is disconnected and can reconnect to catch up from the feed.
+ *
+ * Every open stream holds a request, so appengine-web.xml marks the app threadsafe to let one
+ * instance serve streams and other requests side by side. The heartbeat runs on one shared
+ * scheduled thread. On App Engine that thread comes from ThreadManager's background thread
+ * factory, which needs basic or manual scaling. Where background threads are not allowed, streams
+ * still work without heartbeats, and a client that went away is only noticed on the next comment.
+ */
+final class CommentBroadcaster {
+
+  /** The most events waiting to be written to one client before it is dropped. */
+  static final int MAX_PENDING_EVENTS = 64;
+
+  /** How often a comment line is sent to every client so that idle connections stay open. */
+  static final long HEARTBEAT_SECONDS = 15;
+
+  private static final byte[] HEARTBEAT = ": heartbeat\n\n".getBytes(StandardCharsets.UTF_8);
+
+  private static final Logger logger = Logger.getLogger(CommentBroadcaster.class.getName());
+
+  private static final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+  private static ScheduledExecutorService heartbeat = null;
+
+  private CommentBroadcaster() {
+    // Disallow instances.
+  }
+
+  /** Starts streaming to the client of an async request. */
+  static void connect(AsyncContext context) throws IOException {
+    Connection connection = new Connection(context);
+    connections.add(connection);
+    startHeartbeat();
+
+    context.addListener(connection);
+    context.getResponse().getOutputStream().setWriteListener(connection);
+  }
+
+  /** Sends a newly posted comment to every connected client. */
+  static void publish(Comment comment) {
+    if (connections.isEmpty()) {
+      return;
+    }
+
+    String event = "id: " + comment.getId() + "\ndata: " + new Gson().toJson(comment) + "\n\n";
+    byte[] bytes = event.getBytes(StandardCharsets.UTF_8);
+    for (Connection connection : connections) {
+      connection.send(bytes);
+    }
+  }
+
+  /** Closes every stream and stops the heartbeat. */
+  static synchronized void shutdown() {
+    for (Connection connection : connections) {
+      connection.close();
+    }
+    if (heartbeat != null) {
+      heartbeat.shutdownNow();
+      heartbeat = null;
+    }
+  }
+
+  private static synchronized void startHeartbeat() {
+    if (heartbeat != null) {
+      return;
+    }
+
+    heartbeat = Executors.newSingleThreadScheduledExecutor(threadFactory());
+    try {
+      heartbeat.scheduleAtFixedRate(() -> {
+        for (Connection connection : connections) {
+          connection.send(HEARTBEAT);
+        }
+      }, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    } catch (RuntimeException e) {
+      // The thread factory refused. Keep the executor so that this is not tried on every connect.
+      logger.log(Level.WARNING, "Comment streams will run without heartbeats", e);
+    }
+  }
+
+  /**
+   * Returns App Engine's background thread factory in production, since request threads end with
+   * their request. Elsewhere, such as the dev server and the load test, a daemon thread is used.
+   */
+  private static ThreadFactory threadFactory() {
+    if (SystemProperty.environment.value() == SystemProperty.Environment.Value.Production) {
+      return ThreadManager.backgroundThreadFactory();
+    }
+    return runnable -> {
+      Thread thread = new Thread(runnable, "comment-stream-heartbeat");
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * One client. Events are queued and written whenever the container says the output can take
+   * more, either right away or from onWritePossible once the client has caught up.
+   */
+  private static final class Connection implements WriteListener, AsyncListener {
+    private final AsyncContext context;
+    private final Queue<byte[]> pending = new ArrayDeque<>();
+    private ServletOutputStream out = null;
+    private boolean closed = false;
+
+    Connection(AsyncContext context) {
+      this.context = context;
+    }
+
+    synchronized void send(byte[] event) {
+      if (closed) {
+        return;
+      }
+      if (pending.size() >= MAX_PENDING_EVENTS) {
+        close();
+        return;
+      }
+
+      pending.add(event);
+      drain();
+    }
+
+    @Override
+    public synchronized void onWritePossible() throws IOException {
+      if (out == null) {
+        out = context.getResponse().getOutputStream();
+      }
+      drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      close();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      close();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      close();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      close();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+
+    synchronized void close() {
+      if (closed) {
+        return;
+      }
+
+      closed = true;
+      pending.clear();
+      connections.remove(this);
+      try {
+        context.complete();
+      } catch (IllegalStateException e) {
+        // The request is already over.
+      }
+    }
+
+    /** Writes queued events for as long as the output can take them without blocking. */
+    private void drain() {
+      if (out == null || closed) {
+        return;
+      }
+
+      try {
+        while (!pending.isEmpty() && out.isReady()) {
+          out.write(pending.poll());
+          if (out.isReady()) {
+            out.flush();
+          }
+        }
+      } catch (IOException e) {
+        close();
+      }
+    }
+  }
+}
@@ -0,0 +1,227 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentCursor;
+import com.google.sps.storage.CommentRepositories;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the newest comments in memory so that the comment feed can usually be served without going
+ * to storage. The comment servlets update the cache right after every write, and the cache fills
+ * itself from storage the first time it is read.
+ *
+ * The cache is local to this server instance, so it only sees writes made through this instance
+ * right away. Writes made through other instances show up when the cache is read from storage
+ * again, which happens once a snapshot is older than TTL_MILLIS. Deletes shrink the window, so a
+ * window that has lost half its comments is read again on the next request.
+ */
+final class CommentCache {
+
+  /** The most comments kept in memory. */
+  static final int CAPACITY = 1000;
+
+  /** How long a snapshot read from storage is used before it is read again. */
+  static final long TTL_MILLIS = 5_000;
+
+  /**
+   * The comments in the cache, newest first, whether they are all the comments there are, and
+   * when they stop being fresh. Reads use whatever snapshot is current without locking; writes
+   * replace it.
+   */
+  private static final class Snapshot {
+    final Comment[] comments;
+    final boolean complete;
+    final long expires;
+
+    Snapshot(Comment[] comments, boolean complete, long expires) {
+      this.comments = comments;
+      this.complete = complete;
+      this.expires = expires;
+    }
+
+    /** Returns a snapshot with other comments that expires at the same time as this one. */
+    Snapshot with(Comment[] newComments, boolean newComplete) {
+      // A window that deletes have shrunk to less than half is read again right away.
+      boolean shrunk = !newComplete && newComments.length < CAPACITY / 2;
+      return new Snapshot(newComments, newComplete, shrunk ? 0 : expires);
+    }
+  }
+
+  private static volatile Snapshot snapshot = null;
+
+  // Set while one request reads a stale snapshot again, so that the others keep using the old one
+  // instead of all going to storage.
+  private static final AtomicBoolean refreshing = new AtomicBoolean();
+
+  private CommentCache() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns up to limit comments after the cursor (or from the newest one if the cursor is null).
+   * Returns null if the page reaches past the oldest cached comment, in which case the caller has
+   * to ask Datastore.
+   */
+  static List<Comment> page(int limit, CommentCursor cursor) {
+    Snapshot current = load();
+
+    int from = cursor == null ? 0 : firstPast(current.comments, cursor);
+    int to = (int) Math.min((long) from + Math.max(limit, 0), current.comments.length);
+
+    if (to - from < limit && !current.complete) {
+      return null;
+    }
+
+    return Collections.unmodifiableList(Arrays.asList(current.comments).subList(from, to));
+  }
+
+  /** Adds a comment that has just been stored. */
+  static synchronized void add(Comment comment) {
+    Snapshot current = snapshot;
+    if (current == null) {
+      // Nothing is cached yet. The comment will be read along with the rest on first use.
+      return;
+    }
+
+    Comment[] comments = current.comments;
+    int index = firstPast(comments, CommentCursor.after(comment));
+    if (index > 0 && comments[index - 1].getId() == comment.getId()) {
+      // Already cached.
+      return;
+    }
+    if (index == comments.length && !current.complete) {
+      // Older than everything cached, so it is outside the window anyway.
+      return;
+    }
+
+    if (index >= CAPACITY) {
+      // The window is full of newer comments.
+      snapshot = current.with(comments, false);
+      return;
+    }
+
+    // If the window is full the oldest comment falls out of it.
+    Comment[] updated = new Comment[Math.min(comments.length + 1, CAPACITY)];
+    System.arraycopy(comments, 0, updated, 0, index);
+    updated[index] = comment;
+    System.arraycopy(comments, index, updated, index + 1, updated.length - index - 1);
+    boolean complete = current.complete && comments.length < CAPACITY;
+
+    snapshot = current.with(updated, complete);
+  }
+
+  /**
+   * Removes a deleted comment. The cache still holds every comment newer than its oldest one
+   * afterwards, so the remaining window stays usable.
+   */
+  static synchronized void remove(long id) {
+    Snapshot current = snapshot;
+    if (current == null) {
+      return;
+    }
+
+    Comment[] comments = current.comments;
+    for (int i = 0; i < comments.length; i++) {
+      if (comments[i].getId() == id) {
+        Comment[] updated = new Comment[comments.length - 1];
+        System.arraycopy(comments, 0, updated, 0, i);
+        System.arraycopy(comments, i + 1, updated, i, comments.length - i - 1);
+        snapshot = current.with(updated, current.complete);
+        return;
+      }
+    }
+  }
+
+  /** Removes many deleted comments at once. */
+  static synchronized void removeAll(Set<Long> ids) {
+    Snapshot current = snapshot;
+    if (current == null || ids.isEmpty()) {
+      return;
+    }
+
+    List<Comment> kept = new ArrayList<>(current.comments.length);
+    for (Comment comment : current.comments) {
+      if (!ids.contains(comment.getId())) {
+        kept.add(comment);
+      }
+    }
+    snapshot = current.with(kept.toArray(new Comment[0]), current.complete);
+  }
+
+  /**
+   * Returns the current snapshot, reading the newest comments from storage if there is none. A
+   * stale snapshot is read again by one request while the others keep using it.
+   */
+  private static Snapshot load() {
+    Snapshot current = snapshot;
+    if (current != null) {
+      if (System.currentTimeMillis() < current.expires || !refreshing.compareAndSet(false, true)) {
+        return current;
+      }
+      try {
+        // Holding the lock makes writes wait, so none of them is applied to the old snapshot
+        // after the new one was read.
+        synchronized (CommentCache.class) {
+          snapshot = readNewest();
+          return snapshot;
+        }
+      } finally {
+        refreshing.set(false);
+      }
+    }
+
+    synchronized (CommentCache.class) {
+      if (snapshot == null) {
+        snapshot = readNewest();
+      }
+      return snapshot;
+    }
+  }
+
+  private static Snapshot readNewest() {
+    List<Comment> comments = new ArrayList<>();
+    for (Comment comment : CommentRepositories.get().newestFirst(null, CAPACITY)) {
+      comments.add(comment);
+      if (comments.size() == CAPACITY) {
+        break;
+      }
+    }
+
+    return new Snapshot(comments.toArray(new Comment[0]), comments.size() < CAPACITY,
+        System.currentTimeMillis() + TTL_MILLIS);
+  }
+
+  /** Returns the index of the first comment that belongs after the cursor. */
+  private static int firstPast(Comment[] comments, CommentCursor cursor) {
+    int low = 0;
+    int high = comments.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (cursor.isPast(comments[mid].getTimestamp(), comments[mid].getId())) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+}
@@ -0,0 +1,125 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.sps.storage.CommentRepositories;
+import com.google.sps.storage.CommentRepository;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that deletes many comments in one request, for cleaning up spam. The body is a JSON
+ * object that either lists the comments to delete:
+ *
+ *   {"ids": [1, 2, 3]}
+ *
+ * or describes them, with any of these fields:
+ *
+ *   {"from": 1590000000000, "to": 1590003600000, "contains": "buy now"}
+ *
+ * which deletes the comments posted at or after 'from' and before 'to' whose content contains the
+ * given text. 'contains' may not be empty. A range that leaves out 'from' or 'to' reaches to the
+ * oldest or newest comment, so it also needs "confirm": true, to keep a forgotten field from
+ * deleting every comment. Only admins may delete comments.
+ *
+ * Deletion happens in chunks, and after every chunk a line like {"deleted": 500} is
+ * written so that the caller can follow along. The last line also has "done": true.
+ */
+@WebServlet("/comments/delete")
+public class CommentDeleteServlet extends HttpServlet {
+
+  /** What to delete, as it is sent to this servlet. */
+  private static class DeleteRequest {
+    private long[] ids;
+    private Long from;
+    private Long to;
+    private String contains;
+    private boolean confirm;
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!Admins.check(response)) {
+      return;
+    }
+
+    Gson gson = new Gson();
+
+    DeleteRequest deleteRequest;
+    try {
+      deleteRequest = gson.fromJson(request.getReader(), DeleteRequest.class);
+    } catch (JsonParseException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed delete request.");
+      return;
+    }
+    if (deleteRequest == null || (deleteRequest.ids == null && deleteRequest.from == null
+        && deleteRequest.to == null && deleteRequest.contains == null)) {
+      // Refuse to delete everything because of a missing field.
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "Give the ids of the comments to delete, or a range or text to match.");
+      return;
+    }
+    if (deleteRequest.ids == null) {
+      if (deleteRequest.contains != null && deleteRequest.contains.trim().isEmpty()) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+            "'contains' would match every comment. Leave it out or give some text.");
+        return;
+      }
+      boolean openRange = deleteRequest.from == null || deleteRequest.to == null;
+      if (openRange && !deleteRequest.confirm) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+            "Give both 'from' and 'to', or add \"confirm\": true to delete up to the oldest or"
+            + " newest comment.");
+        return;
+      }
+    }
+
+    response.setContentType("application/x-ndjson;");
+    PrintWriter progress = response.getWriter();
+    long[] deleted = {0};
+    Consumer<Set<Long>> onChunk = ids -> {
+      CommentCache.removeAll(ids);
+      CommentSearchIndex.removeAll(ids);
+
+      deleted[0] += ids.size();
+      progress.println("{\"deleted\": " + deleted[0] + "}");
+      progress.flush();
+    };
+
+    CommentRepository repository = CommentRepositories.get();
+    if (deleteRequest.ids != null) {
+      List<Long> ids = new ArrayList<>(deleteRequest.ids.length);
+      for (long id : deleteRequest.ids) {
+        ids.add(id);
+      }
+      repository.deleteAll(ids, onChunk);
+    } else {
+      repository.deleteMatching(deleteRequest.from, deleteRequest.to, deleteRequest.contains,
+          onChunk);
+    }
+
+    progress.println("{\"deleted\": " + deleted[0] + ", \"done\": true}");
+  }
+}
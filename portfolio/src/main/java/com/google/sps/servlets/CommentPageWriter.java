@@ -0,0 +1,32 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentCursor;
+import java.io.IOException;
+
+/** Writes one page of the comment feed to a response, one comment at a time. */
+interface CommentPageWriter {
+
+  /** Writes the next comment of the page. */
+  void write(Comment comment) throws IOException;
+
+  /** Sends what has been written so far to the client. */
+  void flush() throws IOException;
+
+  /** Ends the page. The cursor is null if this is the last page. */
+  void finish(CommentCursor next) throws IOException;
+}
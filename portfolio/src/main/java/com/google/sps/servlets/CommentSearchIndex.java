@@ -0,0 +1,433 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Comment;
+import com.google.sps.storage.CommentRepositories;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An inverted index over the words of every comment, so that comments can be searched without
+ * reading them all. Each comment gets a document number in the order it was indexed, and each word
+ * maps to the sorted document numbers of the comments that use it, together with how often they
+ * do. The index is built from storage on the first search and kept up to date by the servlets
+ * that write comments.
+ *
+ * Like CommentCache, the index is local to this server instance. Comments posted through other
+ * instances are picked up by reading storage, newest first, down to the newest comment already
+ * indexed, at most once every CATCH_UP_MILLIS. Comments deleted through other instances are only
+ * dropped when the index is built again, which happens at startup and when an admin asks for it.
+ * While storage is read, searches keep using the current index, and the comments this instance
+ * deletes in the meantime are removed again afterwards so that the read cannot bring them back.
+ */
+final class CommentSearchIndex {
+
+  /** How long after one catch-up with storage the next one happens. */
+  static final long CATCH_UP_MILLIS = 5_000;
+
+  /** How many comments a catch-up reads at a time. Most find only a few new ones. */
+  private static final int CATCH_UP_CHUNK_SIZE = 20;
+
+  /** The document numbers and term counts of the comments that contain one word. */
+  private static final class Postings {
+    int[] docs = new int[4];
+    int[] counts = new int[4];
+    int size = 0;
+
+    void add(int doc, int count) {
+      if (size == docs.length) {
+        docs = Arrays.copyOf(docs, size * 2);
+        counts = Arrays.copyOf(counts, size * 2);
+      }
+      docs[size] = doc;
+      counts[size] = count;
+      size++;
+    }
+
+    /** Returns the position of doc in this list, or a negative number if it is not there. */
+    int find(int doc, int from) {
+      return Arrays.binarySearch(docs, from, size, doc);
+    }
+  }
+
+  /** The postings of a set of comments. Guarded by the lock once it is in use. */
+  private static final class Index {
+    final Map<String, Postings> postingsByWord = new HashMap<>();
+    final Map<Long, Integer> docById = new HashMap<>();
+    Comment[] comments = new Comment[16];
+    final BitSet deleted = new BitSet();
+    int docCount = 0;
+    long newestTimestamp = Long.MIN_VALUE;
+
+    void index(Comment comment) {
+      if (docById.containsKey(comment.getId())) {
+        return;
+      }
+
+      int doc = docCount++;
+      if (doc == comments.length) {
+        comments = Arrays.copyOf(comments, doc * 2);
+      }
+      comments[doc] = comment;
+      docById.put(comment.getId(), doc);
+      newestTimestamp = Math.max(newestTimestamp, comment.getTimestamp());
+
+      for (Map.Entry<String, Integer> entry : tokenize(comment.getContent()).entrySet()) {
+        postingsByWord.computeIfAbsent(entry.getKey(), word -> new Postings())
+            .add(doc, entry.getValue());
+      }
+    }
+
+    void remove(long id) {
+      Integer doc = docById.remove(id);
+      if (doc != null) {
+        deleted.set(doc);
+        comments[doc] = null;
+      }
+
+      // Deleted comments still take up room in the postings. Once they are the majority it is
+      // cheaper to start over than to keep skipping them.
+      if (deleted.cardinality() > docById.size()) {
+        reindex();
+      }
+    }
+
+    /** Builds the index again from the comments that are left. */
+    private void reindex() {
+      List<Comment> remaining = new ArrayList<>(docById.size());
+      for (int doc = 0; doc < docCount; doc++) {
+        if (!deleted.get(doc)) {
+          remaining.add(comments[doc]);
+        }
+      }
+
+      postingsByWord.clear();
+      docById.clear();
+      deleted.clear();
+      comments = new Comment[Math.max(16, remaining.size())];
+      docCount = 0;
+      for (Comment comment : remaining) {
+        index(comment);
+      }
+    }
+  }
+
+  private static final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private static volatile Index index = null;
+
+  // Package-private so that tests can ask for a catch-up on the next search.
+  static volatile long nextCatchUp = 0;
+
+  // Set while storage is read. The writes made meanwhile are recorded here, with the write lock
+  // held, and replayed on the index once the read is done.
+  private static final AtomicBoolean refreshing = new AtomicBoolean();
+  private static List<Comment> addedDuringRefresh = null;
+  private static Set<Long> removedDuringRefresh = null;
+
+  private CommentSearchIndex() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns up to limit comments that contain every word of the query. Comments that use the
+   * words more often rank higher, and so do newer comments: the term count is divided by one plus
+   * the comment's age in days.
+   */
+  static List<Comment> search(String query, int limit) {
+    List<String> words = new ArrayList<>(tokenize(query).keySet());
+    if (words.isEmpty() || limit <= 0) {
+      return new ArrayList<>();
+    }
+
+    load();
+    lock.readLock().lock();
+    try {
+      Index current = index;
+      Postings[] lists = new Postings[words.size()];
+      for (int i = 0; i < lists.length; i++) {
+        lists[i] = current.postingsByWord.get(words.get(i));
+        if (lists[i] == null) {
+          return new ArrayList<>();
+        }
+      }
+      // Walking the shortest list and looking the others up keeps the work proportional to the
+      // rarest word.
+      Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+      long now = System.currentTimeMillis();
+      PriorityQueue<ScoredDoc> best = new PriorityQueue<>(limit + 1);
+      int[] positions = new int[lists.length];
+
+      for (int i = 0; i < lists[0].size; i++) {
+        int doc = lists[0].docs[i];
+        if (current.deleted.get(doc)) {
+          continue;
+        }
+
+        int count = lists[0].counts[i];
+        for (int j = 1; j < lists.length && count > 0; j++) {
+          int position = lists[j].find(doc, positions[j]);
+          if (position < 0) {
+            positions[j] = -position - 1;
+            count = 0;
+          } else {
+            positions[j] = position;
+            count += lists[j].counts[position];
+          }
+        }
+        if (count == 0) {
+          continue;
+        }
+
+        double ageInDays =
+            Math.max(0, now - current.comments[doc].getTimestamp()) / 86_400_000.0;
+        best.add(new ScoredDoc(doc, count / (1 + ageInDays)));
+        if (best.size() > limit) {
+          best.poll();
+        }
+      }
+
+      Comment[] results = new Comment[best.size()];
+      for (int i = results.length - 1; i >= 0; i--) {
+        results[i] = current.comments[best.poll().doc];
+      }
+      return Arrays.asList(results);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Indexes a comment that has just been stored. */
+  static void add(Comment comment) {
+    lock.writeLock().lock();
+    try {
+      if (index != null) {
+        index.index(comment);
+      }
+      if (addedDuringRefresh != null) {
+        addedDuringRefresh.add(comment);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Removes deleted comments from the search results. */
+  static void removeAll(Collection<Long> ids) {
+    lock.writeLock().lock();
+    try {
+      for (long id : ids) {
+        if (index != null) {
+          index.remove(id);
+        }
+        if (removedDuringRefresh != null) {
+          removedDuringRefresh.add(id);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Splits text into lower-case words made of letters and digits, and counts how often each one
+   * appears. Words are kept in the order they first appear.
+   */
+  static Map<String, Integer> tokenize(String text) {
+    Map<String, Integer> counts = new LinkedHashMap<>();
+    if (text == null) {
+      return counts;
+    }
+
+    StringBuilder word = new StringBuilder();
+    int i = 0;
+    while (i <= text.length()) {
+      int codePoint = i < text.length() ? text.codePointAt(i) : ' ';
+      if (Character.isLetterOrDigit(codePoint)) {
+        word.appendCodePoint(Character.toLowerCase(codePoint));
+      } else if (word.length() > 0) {
+        counts.merge(word.toString(), 1, Integer::sum);
+        word.setLength(0);
+      }
+      i += Character.charCount(codePoint);
+    }
+    return counts;
+  }
+
+  /**
+   * Builds the index again from every comment in storage, for admins. Searches keep using the
+   * current index until the new one is ready. Returns how many comments the new index holds.
+   */
+  static int rebuild() {
+    synchronized (CommentSearchIndex.class) {
+      build();
+      lock.readLock().lock();
+      try {
+        return index.docById.size();
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Builds the index on the first search, which every search waits for, and catches up with
+   * storage once CATCH_UP_MILLIS have passed, in one request while the others search as before.
+   */
+  private static void load() {
+    if (index == null) {
+      synchronized (CommentSearchIndex.class) {
+        if (index == null) {
+          build();
+        }
+      }
+      return;
+    }
+
+    if (System.currentTimeMillis() < nextCatchUp || !refreshing.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      // An admin rebuild records writes the same way, so the two take turns.
+      synchronized (CommentSearchIndex.class) {
+        catchUp();
+      }
+    } finally {
+      refreshing.set(false);
+    }
+  }
+
+  /** Reads every comment from storage into a new index, which then replaces the current one. */
+  private static void build() {
+    startRecording();
+    Index fresh = new Index();
+    try {
+      for (Comment comment : CommentRepositories.get().newestFirst(null, 500)) {
+        fresh.index(comment);
+      }
+    } catch (RuntimeException e) {
+      fresh = null;
+      throw e;
+    } finally {
+      lock.writeLock().lock();
+      try {
+        if (fresh != null) {
+          replayRecorded(fresh);
+          index = fresh;
+          nextCatchUp = System.currentTimeMillis() + CATCH_UP_MILLIS;
+        }
+        addedDuringRefresh = null;
+        removedDuringRefresh = null;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Indexes the comments in storage that are at least as new as the newest indexed one. Comments
+   * with that same timestamp are read again, since some of them may not have been stored yet the
+   * last time, and indexing one twice does nothing.
+   */
+  private static void catchUp() {
+    long newestIndexed;
+    lock.readLock().lock();
+    try {
+      newestIndexed = index.newestTimestamp;
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    startRecording();
+    List<Comment> newer = new ArrayList<>();
+    try {
+      for (Comment comment : CommentRepositories.get().newestFirst(null, CATCH_UP_CHUNK_SIZE)) {
+        if (comment.getTimestamp() < newestIndexed) {
+          break;
+        }
+        newer.add(comment);
+      }
+    } catch (RuntimeException e) {
+      newer = null;
+      throw e;
+    } finally {
+      lock.writeLock().lock();
+      try {
+        if (newer != null) {
+          for (Comment comment : newer) {
+            index.index(comment);
+          }
+          replayRecorded(index);
+          nextCatchUp = System.currentTimeMillis() + CATCH_UP_MILLIS;
+        }
+        addedDuringRefresh = null;
+        removedDuringRefresh = null;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  private static void startRecording() {
+    lock.writeLock().lock();
+    try {
+      addedDuringRefresh = new ArrayList<>();
+      removedDuringRefresh = new HashSet<>();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Applies the writes recorded since startRecording. Must hold the write lock. */
+  private static void replayRecorded(Index target) {
+    for (Comment comment : addedDuringRefresh) {
+      target.index(comment);
+    }
+    for (long id : removedDuringRefresh) {
+      target.remove(id);
+    }
+  }
+
+  /** A search hit. The natural order puts the worst hit first, for the top-k heap. */
+  private static final class ScoredDoc implements Comparable<ScoredDoc> {
+    final int doc;
+    final double score;
+
+    ScoredDoc(int doc, double score) {
+      this.doc = doc;
+      this.score = score;
+    }
+
+    @Override
+    public int compareTo(ScoredDoc other) {
+      int byScore = Double.compare(score, other.score);
+      return byScore != 0 ? byScore : Integer.compare(doc, other.doc);
+    }
+  }
+}
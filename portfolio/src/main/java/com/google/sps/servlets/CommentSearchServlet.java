@@ -0,0 +1,77 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.sps.data.Comment;
+import java.io.IOException;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that searches comment content. Returns the best matches for the words in 'q' as a JSON
+ * array of comments, at most 'num-comments' of them. A POST, for admins only, builds the search
+ * index again from storage, which drops the comments deleted through other server instances.
+ */
+@WebServlet("/comments/search")
+public class CommentSearchServlet extends HttpServlet {
+
+  private static final int DEFAULT_RESULTS = 10;
+  private static final int MAX_RESULTS = 100;
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String query = request.getParameter("q");
+    if (query == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing search query 'q'.");
+      return;
+    }
+
+    int limit = DEFAULT_RESULTS;
+    String limitParam = request.getParameter("num-comments");
+    if (limitParam != null) {
+      try {
+        limit = Math.min(Integer.parseInt(limitParam), MAX_RESULTS);
+      } catch (NumberFormatException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "'num-comments' must be a number.");
+        return;
+      }
+    }
+
+    List<Comment> comments = CommentSearchIndex.search(query, limit);
+
+    Gson gson = new Gson();
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(comments));
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!Admins.check(response)) {
+      return;
+    }
+
+    int indexed = CommentSearchIndex.rebuild();
+
+    JsonObject result = new JsonObject();
+    result.addProperty("indexed", indexed);
+    response.setContentType("application/json;");
+    response.getWriter().println(result);
+  }
+}
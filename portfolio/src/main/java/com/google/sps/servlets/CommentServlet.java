@@ -14,12 +14,10 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
+import com.google.sps.data.Comment;
+import com.google.sps.storage.CommentRepositories;
 import java.io.IOException;
+import java.util.Collections;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -31,31 +29,23 @@ public class CommentServlet extends HttpServlet {
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    Entity commentEntity = buildCommentEntity(request);
+    String content = request.getParameter("new-comment");
+    long timestamp = System.currentTimeMillis();
 
-    storeEntity(commentEntity);
+    Comment comment = CommentRepositories.get().add(content, timestamp);
+    CommentCache.add(comment);
+    CommentSearchIndex.add(comment);
+    CommentBroadcaster.publish(comment);
 
     response.sendRedirect("/index.html");
   }
 
-  private Entity buildCommentEntity (HttpServletRequest request) {
-    Entity commentEntity = new Entity("Comment");
-
-    commentEntity.setProperty("content", request.getParameter("new-comment"));
-    commentEntity.setProperty("timestamp", System.currentTimeMillis());
-
-    return commentEntity;
-  }
-
-  private void storeEntity(Entity entity) {
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    datastore.put(entity);
-  }
-
   @Override
   public void doDelete(HttpServletRequest request, HttpServletResponse response) throws IOException {
     long commentId = getCommentId(request);
-    deleteComment(commentId);
+    CommentRepositories.get().delete(commentId);
+    CommentCache.remove(commentId);
+    CommentSearchIndex.removeAll(Collections.singleton(commentId));
   }
   
   /** If a comment with the id 42 is deleted the request will be to the path 'comment/42'
@@ -77,10 +67,4 @@ public class CommentServlet extends HttpServlet {
       return id;
     }
   }
-
-  private void deleteComment(long id) {
-    Key key = KeyFactory.createKey("Comment", id);
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    datastore.delete(key);
-  }
 }
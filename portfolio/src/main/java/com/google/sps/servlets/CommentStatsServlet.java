@@ -0,0 +1,127 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.sps.storage.CommentRepositories;
+import com.google.sps.storage.CommentRepository;
+import com.google.sps.storage.WriteBehindCommentRepository;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that provides comment statistics: the total number of comments and the number posted on
+ * each of the last 'days' days (30 by default), as {"total": 42, "perDay": {"2020-06-01": 3, ...}}.
+ * When comments are written behind, the write-behind metrics are included as "writeBehind".
+ * Results are reused for a few seconds, since dashboards ask for them over and over.
+ *
+ * A POST from an admin counts the comments one by one and corrects the stored counts to match,
+ * answering with the real total as {"total": 42}.
+ */
+@WebServlet("/comments/stats")
+public class CommentStatsServlet extends HttpServlet {
+
+  private static final int DEFAULT_DAYS = 30;
+  private static final int MAX_DAYS = 366;
+  private static final long TTL_MILLIS = 10_000;
+
+  /** The JSON sent back for a number of days, and when it stops being fresh. */
+  private static class CachedStats {
+    final String json;
+    final long expires;
+
+    CachedStats(String json, long expires) {
+      this.json = json;
+      this.expires = expires;
+    }
+  }
+
+  /** The statistics as they are sent back. */
+  private static class Stats {
+    private final long total;
+    private final Map<String, Long> perDay;
+    private final WriteBehindCommentRepository.Metrics writeBehind;
+
+    Stats(long total, Map<String, Long> perDay, WriteBehindCommentRepository.Metrics writeBehind) {
+      this.total = total;
+      this.perDay = perDay;
+      this.writeBehind = writeBehind;
+    }
+  }
+
+  private final Map<Integer, CachedStats> cache = new ConcurrentHashMap<>();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    int days = DEFAULT_DAYS;
+    String daysParam = request.getParameter("days");
+    if (daysParam != null) {
+      try {
+        days = Math.max(1, Math.min(Integer.parseInt(daysParam), MAX_DAYS));
+      } catch (NumberFormatException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "'days' must be a number.");
+        return;
+      }
+    }
+
+    long now = System.currentTimeMillis();
+    CachedStats cached = cache.get(days);
+    if (cached == null || cached.expires <= now) {
+      cached = new CachedStats(computeStats(days), now + TTL_MILLIS);
+      cache.put(days, cached);
+    }
+
+    response.setContentType("application/json;");
+    response.getWriter().println(cached.json);
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!Admins.check(response)) {
+      return;
+    }
+
+    long total = CommentRepositories.get().recount();
+    cache.clear();
+
+    JsonObject result = new JsonObject();
+    result.addProperty("total", total);
+    response.setContentType("application/json;");
+    response.getWriter().println(result);
+  }
+
+  private String computeStats(int days) {
+    CommentRepository repository = CommentRepositories.get();
+    LocalDate firstDay = LocalDate.now(ZoneOffset.UTC).minusDays(days - 1);
+
+    WriteBehindCommentRepository.Metrics writeBehind = null;
+    if (repository instanceof WriteBehindCommentRepository) {
+      writeBehind = ((WriteBehindCommentRepository) repository).metrics();
+    }
+
+    Stats stats = new Stats(repository.count(), repository.countPerDay(firstDay), writeBehind);
+
+    Gson gson = new Gson();
+    return gson.toJson(stats);
+  }
+}
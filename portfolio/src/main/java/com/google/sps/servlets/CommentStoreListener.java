@@ -0,0 +1,41 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.storage.CommentRepositories;
+import java.io.IOException;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Closes the comment store when the app shuts down, writing out comments that are still waiting
+ * in a write-behind queue, and closes the comment streams along with their heartbeat thread. Both
+ * are shared by every servlet, so they are closed here rather than when one of them is taken out
+ * of service.
+ */
+@WebListener
+public class CommentStoreListener implements ServletContextListener {
+
+  @Override
+  public void contextDestroyed(ServletContextEvent event) {
+    CommentBroadcaster.shutdown();
+    try {
+      CommentRepositories.close();
+    } catch (IOException e) {
+      event.getServletContext().log("Could not close the comment store", e);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import javax.servlet.AsyncContext;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that streams newly posted comments as server-sent events, so the page does not have to
+ * poll the comment feed. Each event's data is a comment as JSON. A 'ready' event is sent first, so
+ * that the page can tell a stream that works from one that a buffering server holds back.
+ */
+@WebServlet(urlPatterns = "/comments/stream", asyncSupported = true)
+public class CommentStreamServlet extends HttpServlet {
+
+  private static final byte[] READY = "event: ready\ndata: ok\n\n".getBytes(StandardCharsets.UTF_8);
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    response.setContentType("text/event-stream");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+
+    // Send the headers and the ready event now, so the client sees the stream open before the first
+    // comment.
+    response.getOutputStream().write(READY);
+    response.flushBuffer();
+
+    AsyncContext context = request.startAsync();
+    // The heartbeat notices clients that went away, so the stream never times out on its own.
+    context.setTimeout(0);
+
+    CommentBroadcaster.connect(context);
+  }
+}
@@ -14,72 +14,107 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.FetchOptions;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.gson.Gson;
 import com.google.sps.data.Comment;
+import com.google.sps.data.CommentCursor;
+import com.google.sps.storage.CommentRepositories;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
 
-/** Servlet that provides a list of comments */
+/**
+ * Servlet that provides a page of comments, newest first. Pass the cursor of a page as the
+ * 'cursor' parameter to get the page after it. Pages are JSON unless the client accepts the
+ * binary form written by BinaryCommentPageWriter.
+ */
 @WebServlet("/comments")
 public class CommentsServlet extends HttpServlet {
 
+  /** How many comments are fetched from storage, and written out, at a time. */
+  private static final int CHUNK_SIZE = 100;
+
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     int commentLimit = Integer.parseInt(request.getParameter("num-comments"));
 
-    List<Entity> entities = runCommentsQuery(commentLimit);
-
-    List<Comment> comments = toCommentList(entities);
-
-    String jsonComments = convertToJson(comments);
-    
-    response.setContentType("application/json;");
-    response.getWriter().println(jsonComments);
-  }
+    CommentCursor cursor;
+    try {
+      cursor = CommentCursor.parse(request.getParameter("cursor"));
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
 
-  private List<Entity> runCommentsQuery(int commentLimit) {
-    Query query = new Query("Comment").addSort("timestamp", SortDirection.DESCENDING);
+    // Most pages are in the cache. Only pages past the cached window go to Datastore.
+    Iterable<Comment> comments = CommentCache.page(commentLimit, cursor);
+    if (comments == null) {
+      comments = runCommentsQuery(commentLimit, cursor);
+    }
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    PreparedQuery preparedQuery = datastore.prepare(query);
+    CommentPageWriter writer;
+    String accept = request.getHeader("Accept");
+    response.setHeader("Vary", "Accept");
+    if (accept != null && accept.contains(BinaryCommentPageWriter.CONTENT_TYPE)) {
+      response.setContentType(BinaryCommentPageWriter.CONTENT_TYPE);
+      boolean backReferences = !"false".equals(request.getParameter("back-references"));
+      writer = new BinaryCommentPageWriter(response.getOutputStream(), backReferences);
+    } else {
+      response.setContentType("application/json;");
+      writer = new JsonCommentPageWriter(response.getWriter());
+    }
 
-    return preparedQuery.asList(FetchOptions.Builder.withLimit(commentLimit));
+    writePage(writer, comments, commentLimit, cursor);
   }
 
-  private List<Comment> toCommentList(List<Entity> entities) {
-    List<Comment> comments = new ArrayList<>();
+  /**
+   * Writes up to commentLimit comments that come after the cursor as they are read, so a large
+   * page is never held in memory and the first comments go out before the last ones are fetched.
+   */
+  private void writePage(CommentPageWriter writer, Iterable<Comment> comments, int commentLimit,
+      CommentCursor cursor) throws IOException {
+    Comment last = null;
+    int count = 0;
+
+    for (Comment comment : comments) {
+      if (count == commentLimit) {
+        break;
+      }
+      if (cursor != null && !cursor.isPast(comment.getTimestamp(), comment.getId())) {
+        // Shown on the previous page already.
+        continue;
+      }
 
-    for (Entity entity : entities) {
-      long id = entity.getKey().getId();
-      String content = (String) entity.getProperty("content");
-      long timestamp = (long) entity.getProperty("timestamp");
+      writer.write(comment);
+      last = comment;
+      count++;
 
-      Comment comment = new Comment(id, content, timestamp);
-      comments.add(comment); 
+      if (count % CHUNK_SIZE == 0) {
+        writer.flush();
+      }
     }
 
-    return comments;
+    // A short page means we ran out of comments, so there is nothing to continue from.
+    CommentCursor next = null;
+    if (last != null && count == commentLimit) {
+      next = CommentCursor.after(last);
+    }
+    writer.finish(next);
   }
 
   /**
-   * Converts a ServerStats instance into a JSON string using the Gson library. Note: We first added
-   * the Gson library dependency to pom.xml.
+   * Reads the comments that come after the cursor, newest first. They are fetched in chunks as
+   * the result is iterated; the caller stops once it has a full page.
    */
-  private String convertToJson(List<Comment> comments) {
-    Gson gson = new Gson();
-    String json = gson.toJson(comments);
-    return json;
+  private Iterable<Comment> runCommentsQuery(int commentLimit, CommentCursor cursor) {
+    if (commentLimit <= 0) {
+      return Collections.emptyList();
+    }
+
+    // One extra in the first chunk covers comments that the store reads but skips because they
+    // share the cursor's timestamp.
+    int chunkSize = Math.min(commentLimit + 1, CHUNK_SIZE);
+    return CommentRepositories.get().newestFirst(cursor, chunkSize);
   }
-}
\ No newline at end of file
+}
@@ -15,115 +15,170 @@
 package com.google.sps.servlets;
 
 import com.google.sps.data.Country;
+import com.google.sps.data.CsvTokenizer;
 import com.google.gson.Gson;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Returns country data as a JSON array */
+/**
+ * Returns country data as a JSON array. The data only changes when the app is deployed, so the
+ * JSON is encoded and compressed once in init() and every request just copies the right bytes.
+ *
+ * The list can be narrowed with the 'country' (exact name), 'language' and 'prefix' (start of the
+ * name) parameters, which are matched without regard to case. Every given parameter must match.
+ * Filtered requests are answered from indexes that are also built in init(). The JSON for a
+ * filter is encoded and compressed the first time it is asked for and kept for the next requests,
+ * for up to MAX_CACHED_FILTERS different filters.
+ */
 @WebServlet("/country-data")
 public class CountryDataServlet extends HttpServlet {
 
-  private Collection<Country> countries;
+  // Browsers may reuse the data for an hour and then revalidate it with the ETag.
+  private static final String CACHE_CONTROL = "public, max-age=3600";
 
-  @Override
-  public void init() {
-    countries = new ArrayList<>();
+  private static final int MAX_CACHED_FILTERS = 256;
 
-    Scanner scanner = new Scanner(getServletContext().getResourceAsStream("/WEB-INF/country-data.csv"));
+  private final Gson gson = new Gson();
+  private CountryIndex index;
+  private EncodedJson all;
 
-    // Eat first line that contains headings
-    scanner.nextLine(); 
+  // The encoded answers to recent filters, least recently used first.
+  private final Map<List<String>, EncodedJson> filtered =
+      Collections.synchronizedMap(new LinkedHashMap<List<String>, EncodedJson>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, EncodedJson> eldest) {
+          return size() > MAX_CACHED_FILTERS;
+        }
+      });
 
-    while (scanner.hasNextLine()) {
-      String line = scanner.nextLine();
-      String[] cells = line.split(",");
-
-      String country = parseCountry(cells[0]);
-      String language = listNaturally(parseLanguages(cells[1]));
-      
-      countries.add(new Country(country, language));
+  @Override
+  public void init() {
+    List<Country> countries = new ArrayList<>();
+    List<List<String>> languages = new ArrayList<>();
+
+    try (InputStream in = getServletContext().getResourceAsStream("/WEB-INF/country-data.csv")) {
+      CsvTokenizer csv = CsvTokenizer.fromUtf8(in);
+      StringBuilder cell = new StringBuilder();
+      StringBuilder list = new StringBuilder();
+
+      // Skip the first line that contains headings
+      csv.nextRecord();
+
+      while (csv.nextRecord()) {
+        // Some countries have footnotes at the end of their name (the data comes from Wikipedia)
+        // The footnotes are in this form: Austria[10][11]
+        cell.setLength(0);
+        csv.nextField(cell, CsvTokenizer.STRIP_FOOTNOTES);
+        String country = trim(cell);
+        if (country.isEmpty()) {
+          continue;
+        }
+
+        // Sometimes there is information included in parentheses about the regions in which the
+        // languages are spoken. We remove that information along with the footnotes.
+        cell.setLength(0);
+        csv.nextField(cell, CsvTokenizer.STRIP_FOOTNOTES | CsvTokenizer.STRIP_PARENTHESES);
+        List<String> words = words(cell);
+        String language = listNaturally(words, list);
+
+        countries.add(new Country(country, language));
+        languages.add(words);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read the country data", e);
     }
-    scanner.close();
-  }
 
-  private String firstWord(String str) {
-    int i = 0;
+    index = new CountryIndex(countries, languages);
+    all = new EncodedJson(gson.toJson(countries).getBytes(StandardCharsets.UTF_8));
+  }
 
-    while (i < str.length() && Character.isLetter(str.charAt(i))) {
-      i++;
+  private static String trim(StringBuilder str) {
+    int start = 0;
+    int end = str.length();
+    while (start < end && Character.isWhitespace(str.charAt(start))) {
+      start++;
     }
-
-    return str.substring(0, i);
+    while (end > start && Character.isWhitespace(str.charAt(end - 1))) {
+      end--;
+    }
+    return str.substring(start, end);
   }
 
-  /** Parse the string that belongs to the country in the corresponing cell */
-  private String parseCountry(String countryCell) {
-    
-    // Some countries have footnotes at the end of their name (the data comes from Wikipedia)
-    // The footnotes are in this form: Austria[10][11] 
-    return countryCell.split("\\[")[0];
-  }
+  /** Splits {@code str} into its space-separated words. */
+  private static List<String> words(CharSequence str) {
+    List<String> words = new ArrayList<>();
+    int i = 0;
+    while (i < str.length()) {
+      if (Character.isWhitespace(str.charAt(i))) {
+        i++;
+        continue;
+      }
 
-  private String[] parseLanguages(String languageCell) {
-    // Sometimes there is information included in parentheses about the regions in which the languages are spoken.
-    // We remove that information.
-    return removeParens(removeParens(languageCell, '(', ')'), '[', ']').split(" ");
+      int start = i;
+      while (i < str.length() && !Character.isWhitespace(str.charAt(i))) {
+        i++;
+      }
+      words.add(str.subSequence(start, i).toString());
+    }
+    return words;
   }
 
-  /* Remove parentheses along with contents from a string. E.g removeParens("My name is (this will get removed) george") => "My name is george" */
-  private String removeParens(String str, char opener, char closer) {
-    int openIndex = str.indexOf(opener);
-
-    if (openIndex == -1) {
-      // No opening parenthesis found.
-      return str;
-    } else {
-      int closeIndex = str.indexOf(closer);
-      
-      String newStr;
-      if (closeIndex == -1) {
-        newStr = str.substring(0, openIndex);
-      } else {
-        newStr = str.substring(0, openIndex) + str.substring(closeIndex + 1);
+  /**
+   * List the words naturally, reusing {@code out} to build the result. E.g listNaturally(["one",
+   * "two", "three"]) => "one, two and three"
+   */
+  private static String listNaturally(List<String> words, StringBuilder out) {
+    out.setLength(0);
+    for (int i = 0; i < words.size(); i++) {
+      if (i > 0) {
+        out.append(i == words.size() - 1 ? " and " : ", ");
       }
-
-      // Remove remaining parentheses and return.
-      return removeParens(newStr, opener, closer);
+      out.append(words.get(i));
     }
+    return out.toString();
   }
 
-  /* List an array of string naturally in a string. E.g listNaturally("one", "two", "three") => "one, two and three" */
-  private String listNaturally(String[] arr) {
-    if (arr.length == 0) {
-      return "";
-    } else if (arr.length == 1) {
-      return arr[0];
-    } else {
-      String acc = arr[0];
-      int i = 1;
-
-      while (i < arr.length - 1) {
-        acc += ", " + arr[i];
-        i++;
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String name = parameter(request, "country");
+    String language = parameter(request, "language");
+    String prefix = parameter(request, "prefix");
+
+    EncodedJson body = all;
+    if (name != null || language != null || prefix != null) {
+      // Filters that differ only in case or surrounding spaces share an entry.
+      List<String> key = Arrays.asList(normalize(name), normalize(language), normalize(prefix));
+      body = filtered.get(key);
+      if (body == null) {
+        List<Country> matches = index.find(name, language, prefix);
+        body = new EncodedJson(gson.toJson(matches).getBytes(StandardCharsets.UTF_8));
+        filtered.put(key, body);
       }
+    }
 
-      acc += " and " + arr[i];
+    response.setHeader("Cache-Control", CACHE_CONTROL);
+    body.write(request, response);
+  }
 
-      return acc;
-    }
+  /** Returns the value of the parameter, or null if it is missing or blank. */
+  private static String parameter(HttpServletRequest request, String name) {
+    String value = request.getParameter(name);
+    return value == null || value.trim().isEmpty() ? null : value;
   }
 
-  @Override
-  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    response.setContentType("application/json");
-    Gson gson = new Gson();
-    String json = gson.toJson(countries);
-    response.getWriter().println(json);
+  private static String normalize(String value) {
+    return value == null ? null : CountryIndex.normalize(value);
   }
 }
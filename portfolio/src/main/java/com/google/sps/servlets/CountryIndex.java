@@ -0,0 +1,160 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Country;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Read-only indexes over the country data, built once when CountryDataServlet starts. Countries
+ * are found by exact name through a hash map, by language through an inverted index, and by name
+ * prefix through binary search over the names in sorted order. Names and languages are matched
+ * without regard to case.
+ *
+ * Countries are referred to by their position in the original list, and queries return them in
+ * that order.
+ */
+final class CountryIndex {
+  private static final int[] NONE = new int[0];
+
+  private final Country[] countries;
+  private final String[] names;
+  private final Map<String, Integer> byName = new HashMap<>();
+  private final Map<String, int[]> byLanguage = new HashMap<>();
+
+  // The positions of the countries sorted by name, and the names in the same order.
+  private final int[] sortedPositions;
+  private final String[] sortedNames;
+
+  /**
+   * @param countries The countries in the order queries should return them.
+   * @param languages The languages of each country, in the same order as {@code countries}.
+   */
+  CountryIndex(List<Country> countries, List<List<String>> languages) {
+    this.countries = countries.toArray(new Country[0]);
+    this.names = new String[this.countries.length];
+
+    Map<String, List<Integer>> positionsByLanguage = new HashMap<>();
+    for (int i = 0; i < this.countries.length; i++) {
+      names[i] = normalize(this.countries[i].getCountry());
+      byName.putIfAbsent(names[i], i);
+
+      for (String language : languages.get(i)) {
+        List<Integer> positions =
+            positionsByLanguage.computeIfAbsent(normalize(language), key -> new ArrayList<>());
+        // A language may be listed twice for the same country.
+        if (positions.isEmpty() || positions.get(positions.size() - 1) != i) {
+          positions.add(i);
+        }
+      }
+    }
+
+    for (Map.Entry<String, List<Integer>> entry : positionsByLanguage.entrySet()) {
+      byLanguage.put(entry.getKey(), entry.getValue().stream().mapToInt(i -> i).toArray());
+    }
+
+    Integer[] order = new Integer[this.countries.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> names[a].compareTo(names[b]));
+
+    sortedPositions = new int[order.length];
+    sortedNames = new String[order.length];
+    for (int i = 0; i < order.length; i++) {
+      sortedPositions[i] = order[i];
+      sortedNames[i] = names[order[i]];
+    }
+  }
+
+  /**
+   * Returns the countries that match every filter that is not null: the exact {@code name}, one
+   * of whose languages is {@code language}, and whose name starts with {@code prefix}. The
+   * smallest candidate set is looked up through its index and only those countries are checked
+   * against the other filters.
+   */
+  List<Country> find(String name, String language, String prefix) {
+    name = name == null ? null : normalize(name);
+    language = language == null ? null : normalize(language);
+    prefix = prefix == null ? null : normalize(prefix);
+
+    int[] candidates;
+    if (name != null) {
+      Integer position = byName.get(name);
+      candidates = position == null ? NONE : new int[] {position};
+    } else if (language != null) {
+      candidates = byLanguage.getOrDefault(language, NONE);
+    } else if (prefix != null) {
+      candidates = withPrefix(prefix);
+    } else {
+      return Arrays.asList(countries);
+    }
+
+    List<Country> matches = new ArrayList<>();
+    for (int position : candidates) {
+      if (prefix != null && !names[position].startsWith(prefix)) {
+        continue;
+      }
+      // Candidates found by language already speak it, but those found by name may not.
+      if (language != null && name != null && !spokenIn(language, position)) {
+        continue;
+      }
+      matches.add(countries[position]);
+    }
+    return matches;
+  }
+
+  /** Returns the positions of the countries whose names start with {@code prefix}, in order. */
+  private int[] withPrefix(String prefix) {
+    int from = firstAtLeast(prefix);
+    int to = from;
+    while (to < sortedNames.length && sortedNames[to].startsWith(prefix)) {
+      to++;
+    }
+
+    int[] positions = Arrays.copyOfRange(sortedPositions, from, to);
+    Arrays.sort(positions);
+    return positions;
+  }
+
+  /** Returns the first index in sortedNames whose name is not less than {@code key}. */
+  private int firstAtLeast(String key) {
+    int low = 0;
+    int high = sortedNames.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sortedNames[mid].compareTo(key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private boolean spokenIn(String language, int position) {
+    return Arrays.binarySearch(byLanguage.getOrDefault(language, NONE), position) >= 0;
+  }
+
+  /** Returns {@code str} the way names and languages are compared. */
+  static String normalize(String str) {
+    return str.trim().toLowerCase(Locale.ROOT);
+  }
+}
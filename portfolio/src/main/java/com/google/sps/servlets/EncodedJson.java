@@ -0,0 +1,154 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A JSON document that has been encoded to UTF-8 and compressed ahead of time, so serving it just
+ * copies the right bytes to the response. Encoded documents are considered read-only.
+ */
+final class EncodedJson {
+  private final byte[] json;
+  private final byte[] gzippedJson;
+  private final String etag;
+  private final String gzipEtag;
+
+  /**
+   * @param json The UTF-8 encoded document. It is not copied, so it must not be changed later.
+   */
+  EncodedJson(byte[] json) {
+    this.json = json;
+    this.gzippedJson = gzip(json);
+
+    // The compressed bytes are a different representation, so they get their own strong tag.
+    String hash = sha256Hex(json);
+    this.etag = "\"" + hash + "\"";
+    this.gzipEtag = "\"" + hash + "-gzip\"";
+  }
+
+  /**
+   * Sends the document, compressed if the client accepts gzip. A request that already holds the
+   * current version gets a 304 without a body.
+   */
+  void write(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    boolean useGzip = acceptsGzip(request.getHeader("Accept-Encoding"));
+    String tag = useGzip ? gzipEtag : etag;
+
+    response.setHeader("ETag", tag);
+    response.setHeader("Vary", "Accept-Encoding");
+
+    if (matches(request.getHeader("If-None-Match"), tag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    byte[] body = useGzip ? gzippedJson : json;
+    if (useGzip) {
+      response.setHeader("Content-Encoding", "gzip");
+    }
+
+    response.setContentType("application/json;charset=UTF-8");
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  /**
+   * Returns true if the Accept-Encoding header allows gzip. An explicit gzip entry decides on its
+   * own; otherwise a * entry does. Either one turns gzip off with q=0.
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+
+    Boolean wildcard = null;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      String name = parts[0].trim();
+      boolean isGzip = name.equalsIgnoreCase("gzip");
+      if (!isGzip && !name.equals("*")) {
+        continue;
+      }
+
+      boolean refused = false;
+      for (int i = 1; i < parts.length; i++) {
+        String param = parts[i].trim();
+        if (param.matches("[qQ]\\s*=\\s*0(\\.0{0,3})?")) {
+          refused = true;
+        }
+      }
+
+      if (isGzip) {
+        return !refused;
+      }
+      wildcard = !refused;
+    }
+    return wildcard != null && wildcard;
+  }
+
+  /**
+   * Returns true if the If-None-Match header is * or lists {@code tag}. Weak tags are compared by
+   * their opaque part, as the spec asks for with If-None-Match.
+   */
+  private static boolean matches(String ifNoneMatch, String tag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if (candidate.equals("*") || candidate.equals(tag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static byte[] gzip(byte[] bytes) {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length);
+    try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+      out.write(bytes);
+    } catch (IOException e) {
+      // Writing to memory does not fail.
+      throw new UncheckedIOException(e);
+    }
+    return buffer.toByteArray();
+  }
+
+  private static String sha256Hex(byte[] bytes) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+}
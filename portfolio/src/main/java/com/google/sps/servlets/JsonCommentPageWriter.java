@@ -0,0 +1,55 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentCursor;
+import java.io.IOException;
+import java.io.Writer;
+
+/** Writes a page of comments as {"comments": [...], "cursor": "..."}. */
+final class JsonCommentPageWriter implements CommentPageWriter {
+
+  private final Gson gson = new Gson();
+  private final JsonWriter writer;
+
+  JsonCommentPageWriter(Writer out) throws IOException {
+    writer = new JsonWriter(out);
+    writer.beginObject();
+    writer.name("comments").beginArray();
+  }
+
+  @Override
+  public void write(Comment comment) throws IOException {
+    gson.toJson(comment, Comment.class, writer);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  @Override
+  public void finish(CommentCursor next) throws IOException {
+    writer.endArray();
+    if (next != null) {
+      writer.name("cursor").value(next.toString());
+    }
+    writer.endObject();
+    writer.flush();
+  }
+}
@@ -0,0 +1,323 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Counts comments, in total and per day, without reading the comments themselves. Each count is
+ * split over SHARD_COUNT entities and every change goes to a random one of them, so comments
+ * posted at the same time rarely write to the same entity. Reading a count adds up the shards.
+ *
+ * Days are UTC dates written as yyyy-MM-dd.
+ *
+ * The counters can drift from the comments: comments stored before counting began were never
+ * counted, and bulk writes adjust the counters after the comments are written, so a write that
+ * fails in between is not counted. recount fixes this by counting the comments themselves. It
+ * runs once on its own the first time counts are read, and can be run again by an admin.
+ */
+final class CommentCounters {
+
+  /** How many entities every count is spread over. */
+  static final int SHARD_COUNT = 20;
+
+  private static final String TOTAL_KIND = "CommentCountShard";
+  private static final String DAY_KIND = "CommentDayCountShard";
+
+  // Exists once the comments that predate the counters have been counted.
+  private static final Key BACKFILL_KEY = KeyFactory.createKey("CommentCountState", "backfill");
+
+  // Records that one transaction of adjustOnce has been applied.
+  private static final String APPLIED_KIND = "CommentCountApplied";
+
+  /** How long adjustOnce remembers what it applied; recount forgets older ones. */
+  private static final long APPLIED_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+
+  // A cross-group transaction may touch 25 entity groups. Adjusting many days at once touches one
+  // total shard plus one shard per day, and the marker of adjustOnce.
+  private static final int MAX_DAYS_PER_TRANSACTION = 20;
+
+  private static final int MAX_ATTEMPTS = 5;
+
+  // Package-private so that tests starting from an empty Datastore can reset it.
+  static volatile boolean backfilled = false;
+
+  private CommentCounters() {
+    // Disallow instances.
+  }
+
+  /**
+   * Runs work in a cross-group transaction and commits it, starting over if another transaction
+   * wrote the same entities first.
+   */
+  static void inTransaction(DatastoreService datastore, Consumer<Transaction> work) {
+    for (int attempt = 1; ; attempt++) {
+      Transaction txn = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        work.accept(txn);
+        txn.commit();
+        return;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (txn.isActive()) {
+          txn.rollback();
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts a comment posted at timestamp as added (delta 1) or removed (delta -1), as part of the
+   * transaction that stores or deletes it.
+   */
+  static void increment(DatastoreService datastore, Transaction txn, long timestamp, long delta) {
+    int shard = ThreadLocalRandom.current().nextInt(SHARD_COUNT);
+    String day = CommentRepository.dayOf(timestamp);
+
+    addToShard(datastore, txn, totalKey(shard), null, delta);
+    addToShard(datastore, txn, dayKey(day, shard), day, delta);
+  }
+
+  /**
+   * Counts many comments as added or removed at once. Used by the bulk servlets, which store and
+   * delete comments outside of a transaction, so the counts are adjusted right after instead.
+   */
+  static void adjust(DatastoreService datastore, Collection<Long> timestamps, long deltaEach) {
+    Map<String, Long> deltaByDay = new TreeMap<>();
+    for (long timestamp : timestamps) {
+      deltaByDay.merge(CommentRepository.dayOf(timestamp), deltaEach, Long::sum);
+    }
+    apply(datastore, deltaByDay, 0, null);
+  }
+
+  /**
+   * Like adjust, but adjusts the counters only once for a given operation, however often it is
+   * called. Every transaction stores a marker named after the operation, and skips its days if the
+   * marker is already there. The operation must name the same comments on every call.
+   */
+  static void adjustOnce(DatastoreService datastore, String operation, Collection<Long> timestamps,
+      long deltaEach) {
+    Map<String, Long> deltaByDay = new TreeMap<>();
+    for (long timestamp : timestamps) {
+      deltaByDay.merge(CommentRepository.dayOf(timestamp), deltaEach, Long::sum);
+    }
+    apply(datastore, deltaByDay, 0, operation);
+  }
+
+  /**
+   * Counts the comments themselves and corrects the counters to match. Comments stored or deleted
+   * while this runs may be counted wrong, so it is best run when few comments are being written.
+   * Returns the number of comments.
+   */
+  static long recount(DatastoreService datastore) {
+    Query comments = new Query("Comment")
+        .addProjection(new PropertyProjection("timestamp", Long.class));
+    Map<String, Long> deltaByDay = new TreeMap<>();
+    long total = 0;
+    for (Entity comment : datastore.prepare(comments).asIterable(
+        FetchOptions.Builder.withChunkSize(500))) {
+      deltaByDay.merge(CommentRepository.dayOf((long) comment.getProperty("timestamp")), 1L,
+          Long::sum);
+      total++;
+    }
+
+    // Subtract what the counters say now; what is left is how far off they are.
+    for (Entity shard : datastore.prepare(new Query(DAY_KIND)).asIterable(
+        FetchOptions.Builder.withChunkSize(500))) {
+      deltaByDay.merge((String) shard.getProperty("day"), -(long) shard.getProperty("count"),
+          Long::sum);
+    }
+    deltaByDay.values().removeIf(delta -> delta == 0);
+
+    // The day shards and the total shards are kept in step by every transaction, but they are
+    // corrected separately in case they are not.
+    long dayDeltas = deltaByDay.values().stream().mapToLong(Long::longValue).sum();
+    apply(datastore, deltaByDay, total - sumShards(datastore) - dayDeltas, null);
+    forgetOldOperations(datastore);
+    return total;
+  }
+
+  /**
+   * Adds the deltas to the day counters and the total counter, at most MAX_DAYS_PER_TRANSACTION
+   * days per transaction. Every transaction adds its days' deltas to the total as well, so the
+   * total stays the sum of the days. extraTotal is added to the total on top of that. With an
+   * operation, every transaction is applied only once; see adjustOnce.
+   */
+  private static void apply(DatastoreService datastore, Map<String, Long> deltaByDay,
+      long extraTotal, String operation) {
+    List<String> days = new ArrayList<>(deltaByDay.keySet());
+    if (days.isEmpty() && extraTotal != 0) {
+      inTransaction(datastore, txn -> addToShard(datastore, txn,
+          totalKey(ThreadLocalRandom.current().nextInt(SHARD_COUNT)), null, extraTotal));
+    }
+
+    for (int from = 0; from < days.size(); from += MAX_DAYS_PER_TRANSACTION) {
+      List<String> group = days.subList(from, Math.min(from + MAX_DAYS_PER_TRANSACTION,
+          days.size()));
+      long extra = from == 0 ? extraTotal : 0;
+      Key applied = operation == null ? null
+          : KeyFactory.createKey(APPLIED_KIND, operation + "-" + from / MAX_DAYS_PER_TRANSACTION);
+
+      inTransaction(datastore, txn -> {
+        if (applied != null) {
+          try {
+            datastore.get(txn, applied);
+            return;
+          } catch (EntityNotFoundException e) {
+            Entity marker = new Entity(applied);
+            marker.setProperty("timestamp", System.currentTimeMillis());
+            datastore.put(txn, marker);
+          }
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long total = extra;
+        for (String day : group) {
+          long delta = deltaByDay.get(day);
+          addToShard(datastore, txn, dayKey(day, random.nextInt(SHARD_COUNT)), day, delta);
+          total += delta;
+        }
+        addToShard(datastore, txn, totalKey(random.nextInt(SHARD_COUNT)), null, total);
+      });
+    }
+  }
+
+  /** Deletes the markers of adjustOnce that are older than APPLIED_TTL_MILLIS. */
+  private static void forgetOldOperations(DatastoreService datastore) {
+    Query old = new Query(APPLIED_KIND).setKeysOnly().setFilter(new FilterPredicate("timestamp",
+        FilterOperator.LESS_THAN, System.currentTimeMillis() - APPLIED_TTL_MILLIS));
+
+    List<Key> keys = new ArrayList<>();
+    for (Entity marker : datastore.prepare(old).asIterable(
+        FetchOptions.Builder.withChunkSize(500))) {
+      keys.add(marker.getKey());
+      if (keys.size() == 500) {
+        datastore.delete(keys);
+        keys.clear();
+      }
+    }
+    datastore.delete(keys);
+  }
+
+  /**
+   * Counts the comments that were stored before the counters were, the first time this runs
+   * against a Datastore. A marker entity records that it has been done, so only one instance ever
+   * does it.
+   */
+  private static void backfill(DatastoreService datastore) {
+    if (backfilled) {
+      return;
+    }
+
+    boolean[] claimed = {false};
+    inTransaction(datastore, txn -> {
+      try {
+        datastore.get(txn, BACKFILL_KEY);
+        claimed[0] = false;
+      } catch (EntityNotFoundException e) {
+        Entity marker = new Entity(BACKFILL_KEY);
+        marker.setProperty("timestamp", System.currentTimeMillis());
+        datastore.put(txn, marker);
+        claimed[0] = true;
+      }
+    });
+    if (claimed[0]) {
+      recount(datastore);
+    }
+    backfilled = true;
+  }
+
+  /** Returns the number of comments there are. */
+  static long total(DatastoreService datastore) {
+    backfill(datastore);
+    return sumShards(datastore);
+  }
+
+  private static long sumShards(DatastoreService datastore) {
+    List<Key> keys = new ArrayList<>(SHARD_COUNT);
+    for (int shard = 0; shard < SHARD_COUNT; shard++) {
+      keys.add(totalKey(shard));
+    }
+
+    long total = 0;
+    for (Entity shard : datastore.get(keys).values()) {
+      total += (long) shard.getProperty("count");
+    }
+    return total;
+  }
+
+  /** Returns the number of comments posted on each day from firstDay on, by day. */
+  static Map<String, Long> perDay(DatastoreService datastore, LocalDate firstDay) {
+    backfill(datastore);
+    Query query = new Query(DAY_KIND).setFilter(
+        new FilterPredicate("day", FilterOperator.GREATER_THAN_OR_EQUAL, firstDay.toString()));
+
+    Map<String, Long> counts = new TreeMap<>();
+    for (Entity shard : datastore.prepare(query).asIterable(
+        FetchOptions.Builder.withChunkSize(500))) {
+      counts.merge((String) shard.getProperty("day"), (long) shard.getProperty("count"),
+          Long::sum);
+    }
+    return counts;
+  }
+
+  private static void addToShard(DatastoreService datastore, Transaction txn, Key key, String day,
+      long delta) {
+    Entity shard;
+    try {
+      shard = datastore.get(txn, key);
+    } catch (EntityNotFoundException e) {
+      shard = new Entity(key);
+      shard.setProperty("count", 0L);
+      if (day != null) {
+        shard.setProperty("day", day);
+      }
+    }
+
+    shard.setProperty("count", (long) shard.getProperty("count") + delta);
+    datastore.put(txn, shard);
+  }
+
+  private static Key totalKey(int shard) {
+    return KeyFactory.createKey(TOTAL_KIND, "shard-" + shard);
+  }
+
+  private static Key dayKey(String day, int shard) {
+    return KeyFactory.createKey(DAY_KIND, day + "-shard-" + shard);
+  }
+}
@@ -0,0 +1,79 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+/**
+ * Holds the comment store the servlets use. On App Engine that is Datastore. Setting the system
+ * property sps.comments.store to 'local' uses a log file instead, at the path in
+ * sps.comments.log (comments.log by default). Setting sps.comments.writeBehind to 'true' puts a
+ * WriteBehindCommentRepository in front of either one.
+ */
+public final class CommentRepositories {
+
+  private static final int WRITE_BEHIND_CAPACITY = 10_000;
+  private static final int WRITE_BEHIND_GROUP_SIZE = 500;
+  private static final long WRITE_BEHIND_DELAY_MILLIS = 5;
+
+  private static CommentRepository repository = null;
+
+  private CommentRepositories() {
+    // Disallow instances.
+  }
+
+  public static synchronized CommentRepository get() {
+    if (repository == null) {
+      repository = fromSystemProperties();
+    }
+    return repository;
+  }
+
+  /** Replaces the store, for example with a local one in load tests. */
+  public static synchronized void set(CommentRepository newRepository) {
+    repository = newRepository;
+  }
+
+  /** Closes the store if it needs closing, writing out anything it still holds. */
+  public static synchronized void close() throws IOException {
+    if (repository instanceof Closeable) {
+      ((Closeable) repository).close();
+    }
+    repository = null;
+  }
+
+  private static CommentRepository fromSystemProperties() {
+    CommentRepository store;
+    if (!"local".equals(System.getProperty("sps.comments.store"))) {
+      store = new DatastoreCommentRepository();
+    } else {
+      try {
+        store = new LogCommentRepository(Paths.get(System.getProperty("sps.comments.log",
+            "comments.log")));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not open the comment log", e);
+      }
+    }
+
+    if (Boolean.getBoolean("sps.comments.writeBehind")) {
+      store = new WriteBehindCommentRepository(store, WRITE_BEHIND_CAPACITY,
+          WRITE_BEHIND_GROUP_SIZE, WRITE_BEHIND_DELAY_MILLIS);
+    }
+    return store;
+  }
+}
@@ -0,0 +1,96 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentCursor;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Stores comments. The servlets only talk to storage through this interface, so the store can be
+ * Datastore on App Engine or a local file elsewhere; see CommentRepositories for how one is picked.
+ */
+public interface CommentRepository {
+
+  /** Stores a new comment and returns it with its id. */
+  Comment add(String content, long timestamp) throws IOException;
+
+  /**
+   * Stores many new comments at once and returns them with their ids, in the same order. The ids
+   * of the given comments are ignored.
+   */
+  List<Comment> addAll(List<Comment> comments) throws IOException;
+
+  /**
+   * Reserves count ids for comments that will be stored later with putAll. The ids are never
+   * handed out again.
+   */
+  long[] allocateIds(int count) throws IOException;
+
+  /**
+   * Stores new comments under ids reserved with allocateIds. Storing the same comments again, as
+   * when retrying after a failure, stores and counts each of them only once.
+   */
+  void putAll(List<Comment> comments) throws IOException;
+
+  /** Deletes a comment. Returns false if there was no comment with that id. */
+  boolean delete(long id) throws IOException;
+
+  /**
+   * Deletes the comments with the given ids, a chunk at a time. After every chunk the ids that
+   * were actually deleted are passed to onChunk. Ids without a comment are skipped.
+   */
+  void deleteAll(Collection<Long> ids, Consumer<Set<Long>> onChunk) throws IOException;
+
+  /**
+   * Deletes the comments posted at or after from and before to whose content contains the given
+   * text, a chunk at a time. Null means no limit or no text to match. After every chunk the ids
+   * that were deleted are passed to onChunk.
+   */
+  void deleteMatching(Long from, Long to, String contains, Consumer<Set<Long>> onChunk)
+      throws IOException;
+
+  /**
+   * Returns the comments that come after the cursor (or all of them if it is null), newest first.
+   * Comments are read chunkSize at a time as the result is iterated, so callers should stop
+   * iterating once they have what they need.
+   */
+  Iterable<Comment> newestFirst(CommentCursor cursor, int chunkSize);
+
+  /** Returns the number of comments. */
+  long count();
+
+  /** Returns the number of comments posted on each UTC day from firstDay on, by yyyy-MM-dd. */
+  Map<String, Long> countPerDay(LocalDate firstDay);
+
+  /**
+   * Counts the comments one by one and brings what count and countPerDay return in line with
+   * that, for stores that keep separate counts. Returns the number of comments.
+   */
+  long recount() throws IOException;
+
+  /** Returns the UTC day of a timestamp as yyyy-MM-dd, as used by countPerDay. */
+  static String dayOf(long timestamp) {
+    return Instant.ofEpochMilli(timestamp).atZone(ZoneOffset.UTC).toLocalDate().toString();
+  }
+}
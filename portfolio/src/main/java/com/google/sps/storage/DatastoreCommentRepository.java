@@ -0,0 +1,393 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.Filter;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentCursor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/** Stores comments as 'Comment' entities in Datastore, counted by CommentCounters. */
+public final class DatastoreCommentRepository implements CommentRepository {
+
+  /** Datastore accepts at most this many entities or keys in one put or delete. */
+  private static final int MAX_BATCH_SIZE = 500;
+
+  @Override
+  public Comment add(String content, long timestamp) {
+    Entity entity = buildCommentEntity(content, timestamp);
+
+    // Store the comment and count it in the same transaction.
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    CommentCounters.inTransaction(datastore, txn -> {
+      datastore.put(txn, entity);
+      CommentCounters.increment(datastore, txn, timestamp, 1);
+    });
+
+    return toComment(entity);
+  }
+
+  @Override
+  public List<Comment> addAll(List<Comment> comments) throws IOException {
+    List<Entity> entities = new ArrayList<>(comments.size());
+    for (Comment comment : comments) {
+      entities.add(buildCommentEntity(comment.getContent(), comment.getTimestamp()));
+    }
+
+    List<Key> keys = putEntities(entities);
+
+    List<Comment> stored = new ArrayList<>(comments.size());
+    for (int i = 0; i < comments.size(); i++) {
+      Comment comment = comments.get(i);
+      stored.add(new Comment(keys.get(i).getId(), comment.getContent(), comment.getTimestamp()));
+    }
+    return stored;
+  }
+
+  @Override
+  public long[] allocateIds(int count) {
+    KeyRange range = DatastoreServiceFactory.getDatastoreService().allocateIds("Comment", count);
+
+    long[] ids = new long[count];
+    long first = range.getStart().getId();
+    for (int i = 0; i < count; i++) {
+      ids[i] = first + i;
+    }
+    return ids;
+  }
+
+  /**
+   * Putting the same comments again, as write-behind does when a put fails, stores and counts them
+   * only once: the entities are simply overwritten, and each batch is counted with adjustOnce
+   * under a name made from its ids.
+   */
+  @Override
+  public void putAll(List<Comment> comments) throws IOException {
+    List<Entity> entities = new ArrayList<>(comments.size());
+    for (Comment comment : comments) {
+      Entity entity = new Entity(KeyFactory.createKey("Comment", comment.getId()));
+      entity.setProperty("content", comment.getContent());
+      entity.setProperty("timestamp", comment.getTimestamp());
+      entities.add(entity);
+    }
+
+    putEntities(entities);
+  }
+
+  /**
+   * Puts the entities in batches that Datastore accepts. All batches are sent before waiting on
+   * any of them, so this takes about as long as the slowest batch. The comments of each batch are
+   * counted as soon as that batch is stored, so a batch that fails does not keep the others from
+   * being counted. Returns the keys of the entities in order.
+   */
+  private List<Key> putEntities(List<Entity> entities) throws IOException {
+    AsyncDatastoreService datastore = DatastoreServiceFactory.getAsyncDatastoreService();
+    List<Future<List<Key>>> puts = new ArrayList<>();
+    for (int from = 0; from < entities.size(); from += MAX_BATCH_SIZE) {
+      int to = Math.min(from + MAX_BATCH_SIZE, entities.size());
+      puts.add(datastore.put(entities.subList(from, to)));
+    }
+
+    DatastoreService counters = DatastoreServiceFactory.getDatastoreService();
+    List<Key> keys = new ArrayList<>(entities.size());
+    Throwable failure = null;
+    for (int i = 0; i < puts.size(); i++) {
+      List<Key> batch;
+      try {
+        batch = puts.get(i).get();
+      } catch (ExecutionException e) {
+        failure = e.getCause();
+        continue;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while storing comments", e);
+      }
+
+      List<Long> timestamps = new ArrayList<>(batch.size());
+      for (Entity entity : entities.subList(i * MAX_BATCH_SIZE, i * MAX_BATCH_SIZE
+          + batch.size())) {
+        timestamps.add((long) entity.getProperty("timestamp"));
+      }
+      CommentCounters.adjustOnce(counters, "put-" + digest(batch), timestamps, 1);
+      keys.addAll(batch);
+    }
+
+    if (failure != null) {
+      throw new IOException("Storing comments failed", failure);
+    }
+    return keys;
+  }
+
+  @Override
+  public boolean delete(long id) {
+    Key key = KeyFactory.createKey("Comment", id);
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+
+    // Delete the comment and stop counting it in the same transaction.
+    boolean[] deleted = {false};
+    CommentCounters.inTransaction(datastore, txn -> {
+      Entity entity;
+      try {
+        entity = datastore.get(txn, key);
+      } catch (EntityNotFoundException e) {
+        // Already gone, so it is not counted anymore either.
+        deleted[0] = false;
+        return;
+      }
+
+      datastore.delete(txn, key);
+      CommentCounters.increment(datastore, txn, (long) entity.getProperty("timestamp"), -1);
+      deleted[0] = true;
+    });
+    return deleted[0];
+  }
+
+  @Override
+  public void deleteAll(Collection<Long> ids, Consumer<Set<Long>> onChunk) {
+    ChunkedDelete delete = new ChunkedDelete(onChunk);
+    for (long id : ids) {
+      delete.add(KeyFactory.createKey("Comment", id), null);
+    }
+    delete.finish();
+  }
+
+  /**
+   * The range is filtered by Datastore. Only when there is text to match are the comments
+   * themselves read; otherwise the query only projects the timestamp, which the counters need.
+   */
+  @Override
+  public void deleteMatching(Long from, Long to, String contains, Consumer<Set<Long>> onChunk) {
+    List<Filter> filters = new ArrayList<>();
+    if (from != null) {
+      filters.add(new FilterPredicate("timestamp", FilterOperator.GREATER_THAN_OR_EQUAL, from));
+    }
+    if (to != null) {
+      filters.add(new FilterPredicate("timestamp", FilterOperator.LESS_THAN, to));
+    }
+
+    Query query = new Query("Comment");
+    if (filters.size() == 1) {
+      query.setFilter(filters.get(0));
+    } else if (filters.size() > 1) {
+      query.setFilter(CompositeFilterOperator.and(filters));
+    }
+    if (contains == null) {
+      query.addProjection(new PropertyProjection("timestamp", Long.class));
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    FetchOptions options =
+        FetchOptions.Builder.withChunkSize(MAX_BATCH_SIZE).prefetchSize(MAX_BATCH_SIZE);
+
+    ChunkedDelete delete = new ChunkedDelete(onChunk);
+    for (Entity entity : datastore.prepare(query).asIterable(options)) {
+      if (contains != null) {
+        String content = (String) entity.getProperty("content");
+        if (content == null || !content.contains(contains)) {
+          continue;
+        }
+      }
+      delete.add(entity.getKey(), (Long) entity.getProperty("timestamp"));
+    }
+    delete.finish();
+  }
+
+  /**
+   * Only comments from the cursor's timestamp onward are queried, so reading from a cursor deep in
+   * the feed costs the same as reading from the start. The few comments that share the cursor's
+   * timestamp but come before it are skipped here.
+   */
+  @Override
+  public Iterable<Comment> newestFirst(CommentCursor cursor, int chunkSize) {
+    Query query = new Query("Comment")
+        .addSort("timestamp", SortDirection.DESCENDING)
+        .addSort(Entity.KEY_RESERVED_PROPERTY, SortDirection.ASCENDING);
+    if (cursor != null) {
+      query.setFilter(new FilterPredicate("timestamp", FilterOperator.LESS_THAN_OR_EQUAL,
+          cursor.getTimestamp()));
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    PreparedQuery preparedQuery = datastore.prepare(query);
+    Iterable<Entity> entities = preparedQuery.asIterable(
+        FetchOptions.Builder.withChunkSize(chunkSize).prefetchSize(chunkSize));
+
+    return () -> new Iterator<Comment>() {
+      private final Iterator<Entity> iterator = entities.iterator();
+      private Comment next = null;
+
+      @Override
+      public boolean hasNext() {
+        while (next == null && iterator.hasNext()) {
+          Comment comment = toComment(iterator.next());
+          if (cursor == null || cursor.isPast(comment.getTimestamp(), comment.getId())) {
+            next = comment;
+          }
+        }
+        return next != null;
+      }
+
+      @Override
+      public Comment next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Comment comment = next;
+        next = null;
+        return comment;
+      }
+    };
+  }
+
+  @Override
+  public long count() {
+    return CommentCounters.total(DatastoreServiceFactory.getDatastoreService());
+  }
+
+  @Override
+  public Map<String, Long> countPerDay(LocalDate firstDay) {
+    return CommentCounters.perDay(DatastoreServiceFactory.getDatastoreService(), firstDay);
+  }
+
+  @Override
+  public long recount() {
+    return CommentCounters.recount(DatastoreServiceFactory.getDatastoreService());
+  }
+
+  /** Returns a name for the given comment keys that no other set of keys is given. */
+  private static String digest(List<Key> keys) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is always available", e);
+    }
+
+    ByteBuffer ids = ByteBuffer.allocate(8 * keys.size());
+    for (Key key : keys) {
+      ids.putLong(key.getId());
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest(ids.array())) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  private static Entity buildCommentEntity(String content, long timestamp) {
+    Entity commentEntity = new Entity("Comment");
+
+    commentEntity.setProperty("content", content);
+    commentEntity.setProperty("timestamp", timestamp);
+
+    return commentEntity;
+  }
+
+  private static Comment toComment(Entity entity) {
+    long id = entity.getKey().getId();
+    String content = (String) entity.getProperty("content");
+    long timestamp = (long) entity.getProperty("timestamp");
+
+    return new Comment(id, content, timestamp);
+  }
+
+  /**
+   * Collects keys and deletes them a chunk at a time. The timestamp of each comment is needed to
+   * keep the counters right; when it is not known the comments of the chunk are read first, which
+   * also skips ids that do not exist.
+   */
+  private static class ChunkedDelete {
+    private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    private final Consumer<Set<Long>> onChunk;
+    private final List<Key> chunk = new ArrayList<>(MAX_BATCH_SIZE);
+    private final List<Long> timestamps = new ArrayList<>(MAX_BATCH_SIZE);
+
+    ChunkedDelete(Consumer<Set<Long>> onChunk) {
+      this.onChunk = onChunk;
+    }
+
+    void add(Key key, Long timestamp) {
+      chunk.add(key);
+      timestamps.add(timestamp);
+      if (chunk.size() == MAX_BATCH_SIZE) {
+        deleteChunk();
+      }
+    }
+
+    void finish() {
+      deleteChunk();
+    }
+
+    private void deleteChunk() {
+      if (chunk.isEmpty()) {
+        return;
+      }
+
+      if (timestamps.contains(null)) {
+        Map<Key, Entity> found = datastore.get(chunk);
+        chunk.clear();
+        timestamps.clear();
+        for (Entity entity : found.values()) {
+          chunk.add(entity.getKey());
+          timestamps.add((long) entity.getProperty("timestamp"));
+        }
+      }
+
+      datastore.delete(chunk);
+      CommentCounters.adjust(datastore, timestamps, -1);
+
+      Set<Long> ids = new HashSet<>();
+      for (Key key : chunk) {
+        ids.add(key.getId());
+      }
+      onChunk.accept(Collections.unmodifiableSet(ids));
+
+      chunk.clear();
+      timestamps.clear();
+    }
+  }
+}
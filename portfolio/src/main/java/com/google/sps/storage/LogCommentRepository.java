@@ -0,0 +1,549 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentCursor;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Stores comments in a local, append-only log file that is memory-mapped, for running without
+ * Datastore. Every comment that is added or deleted appends a record, and an in-memory index from
+ * (timestamp, id) to the position of each live comment in the log serves the feed. Content is
+ * read from the mapped file when it is needed rather than kept on the heap.
+ *
+ * Once deleted comments take up more of the log than live ones, the live comments are copied to a
+ * new log that replaces the old one. Writes go to the page cache and are not forced to disk one by
+ * one, which keeps their latency low; close() forces them.
+ *
+ * Records are a type byte followed by:
+ *
+ *   ADD      id (8 bytes), timestamp (8 bytes), content length (4 bytes, -1 for null), UTF-8
+ *   DELETE   id (8 bytes)
+ *   ID_FLOOR the lowest id that may still be handed out (8 bytes), so that compaction never lets
+ *            an id be used twice
+ *
+ * The type byte is written last, and a zero type marks the end of the log, so a record that was
+ * only partly written when the process died is ignored. Every record is followed by a zero byte
+ * before its type is set, so that what is left of such a record is not read as records later,
+ * once a shorter record has been written over its start.
+ *
+ * The file is mapped again whenever it outgrows the mapping, and the old mapping is released at
+ * once rather than whenever the garbage collector gets to it.
+ */
+public final class LogCommentRepository implements CommentRepository, Closeable {
+
+  private static final byte END = 0;
+  private static final byte ADD = 1;
+  private static final byte DELETE = 2;
+  private static final byte ID_FLOOR = 3;
+
+  private static final int ADD_HEADER_SIZE = 1 + 8 + 8 + 4;
+  private static final int DELETE_SIZE = 1 + 8;
+  private static final int ID_FLOOR_SIZE = 1 + 8;
+
+  private static final int INITIAL_MAP_SIZE = 1 << 20;
+
+  /** Compaction is not worth it for less garbage than this. */
+  private static final int MIN_COMPACTION_BYTES = 1 << 16;
+
+  private static final int DELETE_CHUNK_SIZE = 500;
+
+  /** Newest first, with comments from the same millisecond by increasing id, like the feed. */
+  private static final Comparator<CommentCursor> NEWEST_FIRST =
+      Comparator.comparingLong(CommentCursor::getTimestamp).reversed()
+          .thenComparingLong(CommentCursor::getId);
+
+  private final Path path;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private FileChannel channel;
+  private MappedByteBuffer log;
+  private int end;
+
+  private final NavigableMap<CommentCursor, Integer> offsets = new TreeMap<>(NEWEST_FIRST);
+  private final Map<Long, CommentCursor> keysById = new HashMap<>();
+  private long nextId = 1;
+  private long liveBytes = 0;
+  private long deadBytes = 0;
+
+  /** Opens the log at path, creating it if it does not exist yet. */
+  public LogCommentRepository(Path path) throws IOException {
+    this.path = path;
+    open();
+  }
+
+  @Override
+  public Comment add(String content, long timestamp) throws IOException {
+    lock.writeLock().lock();
+    try {
+      return append(nextId++, content, timestamp);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public List<Comment> addAll(List<Comment> comments) throws IOException {
+    List<Comment> stored = new ArrayList<>(comments.size());
+    lock.writeLock().lock();
+    try {
+      for (Comment comment : comments) {
+        stored.add(append(nextId++, comment.getContent(), comment.getTimestamp()));
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return stored;
+  }
+
+  /** The ids are recorded in the log, so they are not handed out again after a restart. */
+  @Override
+  public long[] allocateIds(int count) throws IOException {
+    lock.writeLock().lock();
+    try {
+      long[] ids = new long[count];
+      for (int i = 0; i < count; i++) {
+        ids[i] = nextId++;
+      }
+
+      reserve(ID_FLOOR_SIZE);
+      log.putLong(end + 1, nextId);
+      log.put(end + ID_FLOOR_SIZE, END);
+      log.put(end, ID_FLOOR);
+      end += ID_FLOOR_SIZE;
+      return ids;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Comments whose id is already stored are skipped, so a retried putAll does no harm. */
+  @Override
+  public void putAll(List<Comment> comments) throws IOException {
+    lock.writeLock().lock();
+    try {
+      for (Comment comment : comments) {
+        if (keysById.containsKey(comment.getId())) {
+          continue;
+        }
+        append(comment.getId(), comment.getContent(), comment.getTimestamp());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean delete(long id) throws IOException {
+    lock.writeLock().lock();
+    try {
+      boolean deleted = remove(id);
+      compactIfWorthIt();
+      return deleted;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void deleteAll(Collection<Long> ids, Consumer<Set<Long>> onChunk) throws IOException {
+    Iterator<Long> iterator = ids.iterator();
+    while (iterator.hasNext()) {
+      Set<Long> deleted = new HashSet<>();
+      lock.writeLock().lock();
+      try {
+        for (int i = 0; i < DELETE_CHUNK_SIZE && iterator.hasNext(); i++) {
+          long id = iterator.next();
+          if (remove(id)) {
+            deleted.add(id);
+          }
+        }
+        compactIfWorthIt();
+      } finally {
+        lock.writeLock().unlock();
+      }
+      onChunk.accept(deleted);
+    }
+  }
+
+  @Override
+  public void deleteMatching(Long from, Long to, String contains, Consumer<Set<Long>> onChunk)
+      throws IOException {
+    List<Long> ids = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      // In newest-first order the range starts with the newest comment before 'to' and ends with
+      // the oldest comment at or after 'from'.
+      NavigableMap<CommentCursor, Integer> range = offsets;
+      if (to != null) {
+        range = range.tailMap(new CommentCursor(to - 1, Long.MIN_VALUE), true);
+      }
+      if (from != null) {
+        range = range.headMap(new CommentCursor(from, Long.MAX_VALUE), true);
+      }
+
+      for (Map.Entry<CommentCursor, Integer> entry : range.entrySet()) {
+        if (contains != null) {
+          String content = readComment(entry.getValue()).getContent();
+          if (content == null || !content.contains(contains)) {
+            continue;
+          }
+        }
+        ids.add(entry.getKey().getId());
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    deleteAll(ids, onChunk);
+  }
+
+  /**
+   * The index is read a chunk at a time, holding the lock only while the chunk is copied out, so
+   * writers are never held up by a slow reader.
+   */
+  @Override
+  public Iterable<Comment> newestFirst(CommentCursor cursor, int chunkSize) {
+    return () -> new Iterator<Comment>() {
+      private CommentCursor last = cursor;
+      private List<Comment> chunk = new ArrayList<>();
+      private int position = 0;
+      private boolean exhausted = false;
+
+      @Override
+      public boolean hasNext() {
+        if (position == chunk.size() && !exhausted) {
+          chunk = readChunk(last, chunkSize);
+          position = 0;
+          exhausted = chunk.size() < chunkSize;
+          if (!chunk.isEmpty()) {
+            last = CommentCursor.after(chunk.get(chunk.size() - 1));
+          }
+        }
+        return position < chunk.size();
+      }
+
+      @Override
+      public Comment next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return chunk.get(position++);
+      }
+    };
+  }
+
+  @Override
+  public long count() {
+    lock.readLock().lock();
+    try {
+      return offsets.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** The counts are worked out from the index, so they are always right already. */
+  @Override
+  public long recount() {
+    return count();
+  }
+
+  @Override
+  public Map<String, Long> countPerDay(LocalDate firstDay) {
+    long start = firstDay.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    Map<String, Long> counts = new TreeMap<>();
+    lock.readLock().lock();
+    try {
+      for (CommentCursor key : offsets.headMap(new CommentCursor(start, Long.MAX_VALUE), true)
+          .keySet()) {
+        counts.merge(CommentRepository.dayOf(key.getTimestamp()), 1L, Long::sum);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return counts;
+  }
+
+  /** Forces everything written so far to disk and closes the log. Closing twice does nothing. */
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (!channel.isOpen()) {
+        return;
+      }
+      log.force();
+      unmap(log);
+      channel.close();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Maps the log and replays it to rebuild the index. */
+  private void open() throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    long size = Math.max(channel.size(), INITIAL_MAP_SIZE);
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Comment log " + path + " is larger than 2 GB");
+    }
+    log = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+    offsets.clear();
+    keysById.clear();
+    liveBytes = 0;
+    deadBytes = 0;
+
+    int position = 0;
+    while (position < log.capacity()) {
+      byte type = log.get(position);
+      int length;
+      if (type == ADD && position + ADD_HEADER_SIZE <= log.capacity()
+          && log.getInt(position + 17) >= -1
+          && log.getInt(position + 17) <= log.capacity() - position - ADD_HEADER_SIZE) {
+        long id = log.getLong(position + 1);
+        long timestamp = log.getLong(position + 9);
+        CommentCursor key = new CommentCursor(timestamp, id);
+        offsets.put(key, position);
+        keysById.put(id, key);
+        nextId = Math.max(nextId, id + 1);
+        length = addRecordSize(position);
+        liveBytes += length;
+      } else if (type == DELETE && position + DELETE_SIZE <= log.capacity()) {
+        long id = log.getLong(position + 1);
+        CommentCursor key = keysById.remove(id);
+        if (key != null) {
+          int recordSize = addRecordSize(offsets.remove(key));
+          liveBytes -= recordSize;
+          deadBytes += recordSize;
+        }
+        length = DELETE_SIZE;
+        deadBytes += length;
+      } else if (type == ID_FLOOR && position + ID_FLOOR_SIZE <= log.capacity()) {
+        nextId = Math.max(nextId, log.getLong(position + 1));
+        length = ID_FLOOR_SIZE;
+      } else {
+        break;
+      }
+      position += length;
+    }
+    end = position;
+  }
+
+  /** Must be called with the write lock held. */
+  private Comment append(long id, String content, long timestamp) throws IOException {
+    byte[] bytes = content == null ? null : content.getBytes(StandardCharsets.UTF_8);
+    int length = ADD_HEADER_SIZE + (bytes == null ? 0 : bytes.length);
+    reserve(length);
+
+    int position = end;
+    log.putLong(position + 1, id);
+    log.putLong(position + 9, timestamp);
+    log.putInt(position + 17, bytes == null ? -1 : bytes.length);
+    if (bytes != null) {
+      ByteBuffer contentArea = log.duplicate();
+      contentArea.position(position + ADD_HEADER_SIZE);
+      contentArea.put(bytes);
+    }
+    log.put(position + length, END);
+    log.put(position, ADD);
+    end += length;
+
+    CommentCursor key = new CommentCursor(timestamp, id);
+    offsets.put(key, position);
+    keysById.put(id, key);
+    nextId = Math.max(nextId, id + 1);
+    liveBytes += length;
+
+    return new Comment(id, content, timestamp);
+  }
+
+  /** Must be called with the write lock held. */
+  private boolean remove(long id) throws IOException {
+    CommentCursor key = keysById.remove(id);
+    if (key == null) {
+      return false;
+    }
+
+    int size = addRecordSize(offsets.remove(key));
+    liveBytes -= size;
+    deadBytes += size + DELETE_SIZE;
+
+    reserve(DELETE_SIZE);
+    log.putLong(end + 1, id);
+    log.put(end + DELETE_SIZE, END);
+    log.put(end, DELETE);
+    end += DELETE_SIZE;
+    return true;
+  }
+
+  /**
+   * Copies the live comments to a new log and swaps it in, once the garbage outweighs them. Must
+   * be called with the write lock held.
+   */
+  private void compactIfWorthIt() throws IOException {
+    if (deadBytes < MIN_COMPACTION_BYTES || deadBytes < liveBytes) {
+      return;
+    }
+
+    Path compacted = path.resolveSibling(path.getFileName() + ".compacting");
+    try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer floor = ByteBuffer.allocate(ID_FLOOR_SIZE);
+      floor.put(ID_FLOOR).putLong(nextId).flip();
+      writeFully(out, floor);
+
+      // Oldest first, so that replaying the new log builds the index in the usual order.
+      for (int position : offsets.descendingMap().values()) {
+        ByteBuffer record = log.duplicate();
+        record.position(position).limit(position + addRecordSize(position));
+        writeFully(out, record);
+      }
+      out.force(true);
+    }
+
+    log.force();
+    unmap(log);
+    channel.close();
+    Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    open();
+  }
+
+  /**
+   * Makes sure the mapping has room for length more bytes, and the zero byte that follows them.
+   * Must hold the write lock.
+   */
+  private void reserve(int length) throws IOException {
+    long needed = (long) end + length + 1;
+    if (needed <= log.capacity()) {
+      return;
+    }
+    if (needed > Integer.MAX_VALUE) {
+      throw new IOException("Comment log " + path + " is full");
+    }
+
+    long size = Math.min(Math.max((long) log.capacity() * 2, needed), Integer.MAX_VALUE);
+    MappedByteBuffer old = log;
+    log = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    unmap(old);
+  }
+
+  private List<Comment> readChunk(CommentCursor after, int chunkSize) {
+    List<Comment> chunk = new ArrayList<>(chunkSize);
+    lock.readLock().lock();
+    try {
+      Map<CommentCursor, Integer> rest = after == null ? offsets : offsets.tailMap(after, false);
+      for (int position : rest.values()) {
+        if (chunk.size() == chunkSize) {
+          break;
+        }
+        chunk.add(readComment(position));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return chunk;
+  }
+
+  /** Must be called with a lock held. */
+  private Comment readComment(int position) {
+    long id = log.getLong(position + 1);
+    long timestamp = log.getLong(position + 9);
+    int length = log.getInt(position + 17);
+
+    String content = null;
+    if (length >= 0) {
+      byte[] bytes = new byte[length];
+      ByteBuffer contentArea = log.duplicate();
+      contentArea.position(position + ADD_HEADER_SIZE);
+      contentArea.get(bytes);
+      content = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return new Comment(id, content, timestamp);
+  }
+
+  private int addRecordSize(int position) {
+    return ADD_HEADER_SIZE + Math.max(log.getInt(position + 17), 0);
+  }
+
+  /**
+   * Releases a mapping now. Java has no public way to do this, so it is done through the JDK's
+   * internals: Unsafe.invokeCleaner on Java 9 and later, the buffer's cleaner on Java 8. If neither
+   * works the mapping is left for the garbage collector. Nothing may use the buffer afterwards,
+   * which holding the write lock makes sure of.
+   */
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafeClass.getMethod("invokeCleaner", ByteBuffer.class)
+          .invoke(theUnsafe.get(null), buffer);
+      return;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Not Java 9 or later; try the Java 8 way.
+    }
+
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Leave it to the garbage collector.
+    }
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,467 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentCursor;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Acknowledges new comments as soon as they are queued and stores them in the background. A
+ * flusher thread writes the queue to the underlying store in one putAll per group, as soon as a
+ * group is full or a few milliseconds after its first comment arrived, whichever comes first.
+ *
+ * Ids are reserved from the store ahead of time, so a queued comment already has its id. Reads,
+ * deletes and counts flush the queue first, so they never miss a comment that is still waiting;
+ * the comment cache and the search index load from newestFirst, so they see queued comments even
+ * when they are loaded for the first time. A read only waits when there is something to write.
+ *
+ * When the queue is full, add stores the comment right away instead of waiting for room.
+ *
+ * A group that fails to be written is tried again, exactly as it was, after a pause that doubles
+ * with every failure in a row, up to MAX_BACKOFF_MILLIS. No other comment is written until it
+ * succeeds. Since the group does not change, putAll counts it only once even if a failed attempt
+ * was in fact stored. Comments are never dropped while the store is down.
+ *
+ * Deletes and recounts fail with an IOException when the queue cannot be written first, since
+ * the flusher would otherwise store a deleted comment again later. Reads and counts do not fail;
+ * while the store is down they leave out the comments that are still waiting.
+ */
+public final class WriteBehindCommentRepository implements CommentRepository, Closeable {
+
+  private static final Logger logger =
+      Logger.getLogger(WriteBehindCommentRepository.class.getName());
+
+  private static final int ID_BLOCK_SIZE = 100;
+
+  /** The pause after the first failed write; it doubles with each failure in a row. */
+  private static final long MIN_BACKOFF_MILLIS = 50;
+  private static final long MAX_BACKOFF_MILLIS = 5_000;
+
+  /** How many times close tries to write what is left before giving up on it. */
+  private static final int CLOSE_ATTEMPTS = 5;
+
+  /** How often an idle flusher checks whether it should stop. */
+  private static final long IDLE_CHECK_MILLIS = 50;
+
+  private final CommentRepository store;
+  private final BlockingQueue<Comment> queue;
+  private final int maxGroupSize;
+  private final long maxDelayMillis;
+  private final Thread flusher;
+
+  // Held while a group is written, so that a flush by a reader and the flusher do not overlap.
+  private final ReentrantLock flushLock = new ReentrantLock();
+
+  // The group whose write failed, to be tried again as it is before anything else, or null.
+  // Guarded by flushLock.
+  private List<Comment> failed = null;
+
+  // Comments taken from the queue that are not part of any write yet, oldest first. They come
+  // before everything still in the queue. Guarded by flushLock.
+  private final Deque<Comment> pending = new ArrayDeque<>();
+
+  private int failuresInARow = 0;
+
+  // Comments queued and not written yet, including one the flusher may have just taken.
+  private final AtomicInteger unwritten = new AtomicInteger();
+
+  private final Object idLock = new Object();
+  private long[] ids = new long[0];
+  private int nextId = 0;
+
+  private volatile boolean closed = false;
+
+  // Metrics, updated by whoever flushes.
+  private long groupsWritten = 0;
+  private long commentsWritten = 0;
+  private long failedWrites = 0;
+  private double lastFlushMillis = 0;
+  private double maxFlushMillis = 0;
+
+  /**
+   * @param store Where comments are eventually written.
+   * @param capacity The most comments waiting to be written.
+   * @param maxGroupSize The most comments written in one putAll.
+   * @param maxDelayMillis How long the first comment of a group waits for others to join it.
+   */
+  public WriteBehindCommentRepository(CommentRepository store, int capacity, int maxGroupSize,
+      long maxDelayMillis) {
+    this.store = store;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.maxGroupSize = maxGroupSize;
+    this.maxDelayMillis = maxDelayMillis;
+
+    flusher = new Thread(this::runFlusher, "comment-write-behind");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  @Override
+  public Comment add(String content, long timestamp) throws IOException {
+    Comment comment = new Comment(reserveId(), content, timestamp);
+    unwritten.incrementAndGet();
+    if (closed || !flusher.isAlive() || !queue.offer(comment)) {
+      unwritten.decrementAndGet();
+      store.putAll(Collections.singletonList(comment));
+    }
+    return comment;
+  }
+
+  /** Batches are already grouped by the caller, so they go straight to the store. */
+  @Override
+  public List<Comment> addAll(List<Comment> comments) throws IOException {
+    return store.addAll(comments);
+  }
+
+  @Override
+  public long[] allocateIds(int count) throws IOException {
+    return store.allocateIds(count);
+  }
+
+  @Override
+  public void putAll(List<Comment> comments) throws IOException {
+    store.putAll(comments);
+  }
+
+  @Override
+  public boolean delete(long id) throws IOException {
+    flushOrThrow();
+    return store.delete(id);
+  }
+
+  @Override
+  public void deleteAll(Collection<Long> ids, Consumer<Set<Long>> onChunk) throws IOException {
+    flushOrThrow();
+    store.deleteAll(ids, onChunk);
+  }
+
+  @Override
+  public void deleteMatching(Long from, Long to, String contains, Consumer<Set<Long>> onChunk)
+      throws IOException {
+    flushOrThrow();
+    store.deleteMatching(from, to, contains, onChunk);
+  }
+
+  /** If the queue cannot be written, the comments still waiting are left out. */
+  @Override
+  public Iterable<Comment> newestFirst(CommentCursor cursor, int chunkSize) {
+    flush();
+    return store.newestFirst(cursor, chunkSize);
+  }
+
+  /** If the queue cannot be written, the comments still waiting are not counted. */
+  @Override
+  public long count() {
+    flush();
+    return store.count();
+  }
+
+  /** If the queue cannot be written, the comments still waiting are not counted. */
+  @Override
+  public Map<String, Long> countPerDay(LocalDate firstDay) {
+    flush();
+    return store.countPerDay(firstDay);
+  }
+
+  @Override
+  public long recount() throws IOException {
+    flushOrThrow();
+    return store.recount();
+  }
+
+  /**
+   * Writes every queued comment now, in the calling thread. Returns false if a write failed; the
+   * comments that were not written stay queued for the flusher to try again.
+   */
+  public boolean flush() {
+    while (true) {
+      flushLock.lock();
+      try {
+        if (!retryFailed()) {
+          return false;
+        }
+        while (!pending.isEmpty() || !queue.isEmpty()) {
+          List<Comment> group = takePending();
+          queue.drainTo(group, maxGroupSize - group.size());
+          if (!write(group)) {
+            return false;
+          }
+        }
+        if (unwritten.get() == 0) {
+          return true;
+        }
+      } finally {
+        flushLock.unlock();
+      }
+
+      // The flusher has taken a comment from the queue and is waiting for the lock to write it.
+      Thread.yield();
+    }
+  }
+
+  private void flushOrThrow() throws IOException {
+    if (!flush()) {
+      throw new IOException("Comments waiting to be written could not be stored");
+    }
+  }
+
+  /**
+   * Stops taking comments into the queue, writes the ones still in it, stops the flusher and
+   * closes the store. Comments added after this are written right away.
+   */
+  @Override
+  public void close() throws IOException {
+    // The flusher is not interrupted, since that could break a write that is under way. It notices
+    // the flag within IDLE_CHECK_MILLIS.
+    closed = true;
+    try {
+      flusher.join();
+      for (int attempt = 1; !flush() && attempt < CLOSE_ATTEMPTS; attempt++) {
+        Thread.sleep(backoffMillis());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    int left = queueDepth();
+    if (left > 0) {
+      logger.severe("Closing with " + left + " comments that could not be written");
+    }
+
+    if (store instanceof Closeable) {
+      ((Closeable) store).close();
+    }
+  }
+
+  /** Returns how many comments are waiting to be written, including ones being retried. */
+  public int queueDepth() {
+    flushLock.lock();
+    try {
+      return waiting();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Returns a snapshot of the metrics: queue depth, groups and comments written, writes that
+   * failed and will be tried again, and the latest and slowest time one group took to write.
+   */
+  public Metrics metrics() {
+    flushLock.lock();
+    try {
+      return new Metrics(waiting(), groupsWritten, commentsWritten,
+          failedWrites, lastFlushMillis, maxFlushMillis);
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /** The write-behind metrics at one point in time. */
+  public static final class Metrics {
+    private final int queueDepth;
+    private final long groupsWritten;
+    private final long commentsWritten;
+    private final long failedWrites;
+    private final double lastFlushMillis;
+    private final double maxFlushMillis;
+
+    Metrics(int queueDepth, long groupsWritten, long commentsWritten, long failedWrites,
+        double lastFlushMillis, double maxFlushMillis) {
+      this.queueDepth = queueDepth;
+      this.groupsWritten = groupsWritten;
+      this.commentsWritten = commentsWritten;
+      this.failedWrites = failedWrites;
+      this.lastFlushMillis = lastFlushMillis;
+      this.maxFlushMillis = maxFlushMillis;
+    }
+  }
+
+  private long reserveId() throws IOException {
+    synchronized (idLock) {
+      if (nextId == ids.length) {
+        ids = store.allocateIds(ID_BLOCK_SIZE);
+        nextId = 0;
+      }
+      return ids[nextId++];
+    }
+  }
+
+  private void runFlusher() {
+    try {
+      while (!closed) {
+        // Comments that were taken earlier go first. Otherwise wait for a new one, without the lock.
+        Comment first = null;
+        if (!hasTakenComments()) {
+          first = queue.poll(IDLE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+          if (first == null) {
+            continue;
+          }
+        }
+
+        // The group is gathered with the lock held, so a flush() that finds the queue empty only
+        // has to wait for the one comment taken above.
+        flushLock.lock();
+        try {
+          if (first != null) {
+            pending.addLast(first);
+          }
+          if (failed != null) {
+            if (!retryFailed()) {
+              sleepAfterFailure();
+            }
+          } else if (!write(gather(takePending()))) {
+            sleepAfterFailure();
+          }
+        } finally {
+          flushLock.unlock();
+        }
+      }
+    } catch (InterruptedException e) {
+      // Anything taken from the queue has been put back, so this writes the group that was being
+      // gathered too.
+      flush();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean hasTakenComments() {
+    flushLock.lock();
+    try {
+      return failed != null || !pending.isEmpty();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /** Returns how many comments are not written yet. Must hold the flush lock. */
+  private int waiting() {
+    return (failed == null ? 0 : failed.size()) + pending.size() + queue.size();
+  }
+
+  /**
+   * Adds comments from the queue to group until it is full or maxDelayMillis have passed. If the
+   * wait is interrupted, the group is put back at the head of the queue. Must hold the flush lock.
+   */
+  private List<Comment> gather(List<Comment> group) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+    while (group.size() < maxGroupSize) {
+      long wait = deadline - System.nanoTime();
+      Comment next;
+      try {
+        next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+      } catch (InterruptedException e) {
+        for (int i = group.size() - 1; i >= 0; i--) {
+          pending.addFirst(group.get(i));
+        }
+        throw e;
+      }
+      if (next == null) {
+        break;
+      }
+      group.add(next);
+    }
+    return group;
+  }
+
+  /** Removes up to a group's worth of the comments taken earlier. Must hold the lock. */
+  private List<Comment> takePending() {
+    List<Comment> group = new ArrayList<>(maxGroupSize);
+    while (group.size() < maxGroupSize && !pending.isEmpty()) {
+      group.add(pending.pollFirst());
+    }
+    return group;
+  }
+
+  /**
+   * Writes the group that failed before, if there is one. Returns false if it failed again. Must
+   * hold the flush lock.
+   */
+  private boolean retryFailed() {
+    if (failed == null) {
+      return true;
+    }
+    List<Comment> group = failed;
+    failed = null;
+    return write(group);
+  }
+
+  /**
+   * Writes one group. If that fails the group is kept to be tried again as it is, and false is
+   * returned. Must hold the flush lock, and there must be no failed group waiting.
+   */
+  private boolean write(List<Comment> group) {
+    if (group.isEmpty()) {
+      return true;
+    }
+
+    long start = System.nanoTime();
+    try {
+      store.putAll(group);
+    } catch (IOException | RuntimeException e) {
+      failed = group;
+      failedWrites++;
+      failuresInARow++;
+      logger.log(Level.WARNING, "Writing " + group.size() + " comments failed; trying again in "
+          + backoffMillis() + " ms", e);
+      return false;
+    }
+
+    double millis = (System.nanoTime() - start) / 1e6;
+    unwritten.addAndGet(-group.size());
+    groupsWritten++;
+    commentsWritten += group.size();
+    lastFlushMillis = millis;
+    maxFlushMillis = Math.max(maxFlushMillis, millis);
+    failuresInARow = 0;
+    return true;
+  }
+
+  /** Waits before the next write, after a failure. Releases the flush lock while it waits. */
+  private void sleepAfterFailure() throws InterruptedException {
+    long backoff = backoffMillis();
+    flushLock.unlock();
+    try {
+      Thread.sleep(backoff);
+    } finally {
+      flushLock.lock();
+    }
+  }
+
+  /** How long to wait after the failures in a row so far. */
+  private long backoffMillis() {
+    int doublings = Math.min(Math.max(failuresInARow - 1, 0), 30);
+    return Math.min(MIN_BACKOFF_MILLIS << doublings, MAX_BACKOFF_MILLIS);
+  }
+}
@@ -0,0 +1,86 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+/** Media type of the binary comment page written by BinaryCommentPageWriter. */
+const BINARY_COMMENTS_TYPE = 'application/x-sps-comments';
+
+/**
+ * Reads a binary comment page into the same shape as the JSON one: {comments, cursor}.
+ * Ids and timestamps come out as plain numbers, like they do from JSON.
+ */
+function decodeComments(buffer) {
+  const bytes = new Uint8Array(buffer);
+  const utf8 = new TextDecoder('utf-8');
+  let offset = 0;
+
+  // Differences between two large ids can take more than 53 bits, so numbers are read as BigInt.
+  function readVarint() {
+    let value = 0n;
+    let shift = 0n;
+    let byte;
+    do {
+      byte = bytes[offset++];
+      value |= BigInt(byte & 0x7f) << shift;
+      shift += 7n;
+    } while (byte & 0x80);
+    return value;
+  }
+
+  function readSignedVarint() {
+    const value = readVarint();
+    return (value >> 1n) ^ -(value & 1n);
+  }
+
+  function readString(length) {
+    const text = utf8.decode(bytes.subarray(offset, offset + length));
+    offset += length;
+    return text;
+  }
+
+  const version = bytes[offset++];
+  if (version !== 1) {
+    throw new Error('Unknown comment page version ' + version);
+  }
+  const backReferences = (bytes[offset++] & 1) !== 0;
+
+  const earlierContent = [];
+  const comments = [];
+  let id = 0n;
+  let timestamp = 0n;
+
+  while (bytes[offset++] === 1) {
+    id += readSignedVarint();
+    timestamp += readSignedVarint();
+
+    const header = Number(readVarint());
+    let content;
+    if (header === 0) {
+      content = undefined;
+    } else if (header % 2 === 1) {
+      content = earlierContent[(header - 1) / 2];
+    } else {
+      content = readString(header / 2 - 1);
+      if (backReferences) {
+        earlierContent.push(content);
+      }
+    }
+
+    comments.push({id: Number(id), content: content, timestamp: Number(timestamp)});
+  }
+
+  const cursorLength = Number(readVarint());
+  const cursor = (cursorLength === 0) ? null : readString(cursorLength - 1);
+
+  return {comments: comments, cursor: cursor};
+}
@@ -97,18 +97,112 @@ function showComments(container, comments) {
   comments.forEach(comment => container.appendChild(createCommentElement(comment)));
 }
 
-function fetchComments() {
+/** Cursor of the last page of comments shown, or null when there are no more to load. */
+let nextCursor = null;
+
+function fetchComments(cursor) {
   const numComments = document.getElementById("num-comments").value;
 
-  return fetch('/comments?num-comments=' + numComments)
-         .then(response => response.json());
+  let url = '/comments?num-comments=' + numComments;
+  if (cursor) {
+    url += '&cursor=' + encodeURIComponent(cursor);
+  }
+
+  return fetch(url, {headers: {'Accept': BINARY_COMMENTS_TYPE + ', application/json'}})
+      .then(response => {
+        if (response.headers.get('Content-Type').startsWith(BINARY_COMMENTS_TYPE)) {
+          return response.arrayBuffer().then(decodeComments);
+        }
+        return response.json();
+      });
+}
+
+/** Shows a page of comments and remembers where the next page starts. */
+function showPage(container, page) {
+  showComments(container, page.comments);
+
+  nextCursor = page.cursor || null;
+  document.getElementById('more-comments').hidden = (nextCursor === null);
+}
+
+/** How long the comment stream may take to open before the page polls for comments instead. */
+const STREAM_OPEN_TIMEOUT_MS = 5000;
+
+/** How often to look for new comments when there is no stream. */
+const POLL_INTERVAL_MS = 15000;
+
+/** Stream of comments posted by others while the page is open. */
+let commentStream = null;
+
+/** Timer that looks for new comments when the stream is not available. */
+let pollTimer = null;
+
+/** Shows a comment at the top of the list, unless it is already shown. */
+function prependComment(comment) {
+  if (document.getElementById(comment.id) !== null) {
+    return;
+  }
+  document.getElementById('comment-list').prepend(createCommentElement(comment));
+}
+
+/**
+ * Shows new comments at the top of the list as soon as they are posted. The server sends a
+ * 'ready' event when the stream opens. Where responses are buffered, as on App Engine standard,
+ * it never arrives in time, and the page polls the feed instead of reconnecting over and over.
+ */
+function listenForComments() {
+  if (commentStream !== null || pollTimer !== null) {
+    return;
+  }
+  if (!window.EventSource) {
+    pollForComments();
+    return;
+  }
+
+  let ready = false;
+  const stream = new EventSource('/comments/stream');
+  const fallback = setTimeout(() => {
+    stream.close();
+    commentStream = null;
+    pollForComments();
+  }, STREAM_OPEN_TIMEOUT_MS);
+
+  stream.addEventListener('ready', () => {
+    ready = true;
+    clearTimeout(fallback);
+  });
+  stream.onmessage = event => prependComment(JSON.parse(event.data));
+  stream.onerror = () => {
+    // Once the stream has worked, EventSource reconnects by itself.
+    if (!ready) {
+      clearTimeout(fallback);
+      stream.close();
+      commentStream = null;
+      pollForComments();
+    }
+  };
+  commentStream = stream;
+}
+
+/** Checks the newest page of comments for new ones every POLL_INTERVAL_MS. */
+function pollForComments() {
+  pollTimer = setInterval(() => {
+    fetchComments(null).then(page => page.comments.slice().reverse().forEach(prependComment));
+  }, POLL_INTERVAL_MS);
 }
 
 function loadComments() {
   container = document.getElementById('comment-list')
   
   container.innerHTML = '';
+  listenForComments();
 
-  fetchComments().then(comments => showComments(container, comments));
+  fetchComments(null).then(page => showPage(container, page));
 }
 
+/** Appends the next page of comments to the ones already shown. */
+function loadMoreComments() {
+  const container = document.getElementById('comment-list');
+
+  fetchComments(nextCursor).then(page => showPage(container, page));
+}
@@ -0,0 +1,122 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class CsvTokenizerTest {
+  @Test
+  public void plainFields() {
+    Assert.assertEquals(
+        Arrays.asList(Arrays.asList("a", "b", "c"), Arrays.asList("d", "", "f")),
+        records("a,b,c\nd,,f\n", 0));
+  }
+
+  @Test
+  public void lastRecordNeedsNoLineBreak() {
+    Assert.assertEquals(
+        Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c", "d")),
+        records("a,b\r\nc,d", 0));
+  }
+
+  @Test
+  public void quotedFieldMayHoldCommas() {
+    Assert.assertEquals(
+        Arrays.asList(Arrays.asList("Korea, South", "Korean")),
+        records("\"Korea, South\",Korean\n", 0));
+  }
+
+  @Test
+  public void quotedFieldMayHoldLineBreaks() {
+    Assert.assertEquals(
+        Arrays.asList(Arrays.asList("first\nsecond", "x"), Arrays.asList("y", "z")),
+        records("\"first\nsecond\",x\ny,z\n", 0));
+  }
+
+  @Test
+  public void doubledQuoteStandsForOne() {
+    Assert.assertEquals(
+        Arrays.asList(Arrays.asList("say \"hi\"", "")),
+        records("\"say \"\"hi\"\"\",\"\"\n", 0));
+  }
+
+  @Test
+  public void quoteInsideUnquotedFieldIsKept() {
+    Assert.assertEquals(
+        Arrays.asList(Arrays.asList("Cote d\"Ivoire", "French")),
+        records("Cote d\"Ivoire,French\n", 0));
+  }
+
+  @Test
+  public void footnotesAndParenthesesAreStripped() {
+    Assert.assertEquals(
+        Arrays.asList(Arrays.asList("Austria", "German ")),
+        records("Austria[10][11],German (official)[3]\n",
+            CsvTokenizer.STRIP_FOOTNOTES | CsvTokenizer.STRIP_PARENTHESES));
+
+    Assert.assertEquals(
+        Arrays.asList(Arrays.asList("Austria", "German (official)")),
+        records("Austria[10],German (official)[3]\n", CsvTokenizer.STRIP_FOOTNOTES));
+  }
+
+  @Test
+  public void unclosedAsideRunsToEndOfField() {
+    Assert.assertEquals(
+        Arrays.asList(Arrays.asList("Spain", "next")),
+        records("Spain[note,next\n", CsvTokenizer.STRIP_FOOTNOTES));
+  }
+
+  @Test
+  public void unreadFieldsAreSkipped() {
+    CsvTokenizer csv = new CsvTokenizer(CharBuffer.wrap("a,b,c\nd,e,f\n"));
+    StringBuilder field = new StringBuilder();
+
+    Assert.assertTrue(csv.nextRecord());
+    Assert.assertTrue(csv.nextField(field, 0));
+    Assert.assertEquals("a", field.toString());
+
+    field.setLength(0);
+    Assert.assertTrue(csv.nextRecord());
+    Assert.assertTrue(csv.nextField(field, 0));
+    Assert.assertEquals("d", field.toString());
+
+    Assert.assertFalse(csv.nextRecord());
+  }
+
+  private static List<List<String>> records(String text, int strip) {
+    CsvTokenizer csv = new CsvTokenizer(CharBuffer.wrap(text));
+    List<List<String>> records = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    while (csv.nextRecord()) {
+      List<String> record = new ArrayList<>();
+      field.setLength(0);
+      while (csv.nextField(field, strip)) {
+        record.add(field.toString());
+        field.setLength(0);
+      }
+      records.add(record);
+    }
+    return records;
+  }
+}
@@ -0,0 +1,131 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.gson.Gson;
+import com.google.sps.storage.CommentRepositories;
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.HashSet;
+import java.util.Set;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class CommentBatchServletTest {
+  private static final long TIME = 1_590_000_000_000L;
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setDefaultHighRepJobPolicyUnappliedJobPercentage(0),
+      new LocalUserServiceTestConfig())
+      .setEnvIsLoggedIn(true)
+      .setEnvIsAdmin(true)
+      .setEnvEmail("admin@example.com")
+      .setEnvAuthDomain("example.com");
+
+  private final StringWriter body = new StringWriter();
+  private int status = HttpServletResponse.SC_OK;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    CommentRepositories.set(null);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CommentRepositories.set(null);
+    helper.tearDown();
+  }
+
+  @Test
+  public void importsSeveralDatastoreBatchesInOneRequest() throws Exception {
+    int count = 1_234;
+
+    new CommentBatchServlet().doPost(request(comments(count)), response());
+
+    Assert.assertEquals(HttpServletResponse.SC_OK, status);
+    long[] ids = new Gson().fromJson(body.toString(), long[].class);
+    Set<Long> distinct = new HashSet<>();
+    for (long id : ids) {
+      distinct.add(id);
+    }
+    Assert.assertEquals(count, distinct.size());
+    Assert.assertEquals(count, CommentRepositories.get().count());
+  }
+
+  @Test
+  public void refusesMoreThanTheLimit() throws Exception {
+    new CommentBatchServlet().doPost(
+        request(comments(CommentBatchServlet.MAX_COMMENTS + 1)), response());
+
+    Assert.assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, status);
+    Assert.assertEquals(0, CommentRepositories.get().count());
+  }
+
+  private static String comments(int count) {
+    StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < count; i++) {
+      json.append(i == 0 ? "" : ",")
+          .append("{\"content\":\"comment ").append(i).append("\",\"timestamp\":")
+          .append(TIME + i).append('}');
+    }
+    return json.append(']').toString();
+  }
+
+  private static HttpServletRequest request(String json) {
+    BufferedReader reader = new BufferedReader(new StringReader(json));
+    return (HttpServletRequest) Proxy.newProxyInstance(
+        HttpServletRequest.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("getReader")) {
+            return reader;
+          }
+          throw new UnsupportedOperationException(method.getName());
+        });
+  }
+
+  private HttpServletResponse response() {
+    PrintWriter writer = new PrintWriter(body);
+    return (HttpServletResponse) Proxy.newProxyInstance(
+        HttpServletResponse.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getWriter":
+              return writer;
+            case "setContentType":
+              return null;
+            case "sendError":
+              status = (Integer) args[0];
+              return null;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+}
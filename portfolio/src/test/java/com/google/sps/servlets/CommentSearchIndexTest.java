@@ -0,0 +1,109 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Comment;
+import com.google.sps.storage.CommentRepositories;
+import com.google.sps.storage.LogCommentRepository;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class CommentSearchIndexTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private LogCommentRepository repository;
+
+  @Before
+  public void setUp() throws IOException {
+    repository = new LogCommentRepository(folder.getRoot().toPath().resolve("comments.log"));
+    CommentRepositories.set(repository);
+    CommentSearchIndex.rebuild();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    CommentRepositories.close();
+  }
+
+  @Test
+  public void commentsWrittenHereAreFoundRightAway() throws IOException {
+    Comment comment = repository.add("hello world", System.currentTimeMillis());
+    CommentSearchIndex.add(comment);
+
+    Assert.assertEquals(Arrays.asList(comment.getId()),
+        ids(CommentSearchIndex.search("hello", 10)));
+
+    repository.delete(comment.getId());
+    CommentSearchIndex.removeAll(Collections.singleton(comment.getId()));
+
+    Assert.assertTrue(CommentSearchIndex.search("hello", 10).isEmpty());
+  }
+
+  @Test
+  public void catchUpIndexesOnlyCommentsStoredElsewhere() throws IOException {
+    long now = System.currentTimeMillis();
+    Comment old = repository.add("hello old", now - 1_000);
+    CommentSearchIndex.rebuild();
+    // Another instance stores a newer comment and deletes the old one.
+    Comment newer = repository.add("hello new", now);
+    repository.delete(old.getId());
+
+    CommentSearchIndex.nextCatchUp = Long.MAX_VALUE;
+    Assert.assertEquals(Arrays.asList(old.getId()), ids(CommentSearchIndex.search("hello", 10)));
+
+    CommentSearchIndex.nextCatchUp = 0;
+    Assert.assertEquals(Arrays.asList(newer.getId(), old.getId()),
+        ids(CommentSearchIndex.search("hello", 10)));
+
+    Assert.assertEquals(1, CommentSearchIndex.rebuild());
+    Assert.assertEquals(Arrays.asList(newer.getId()), ids(CommentSearchIndex.search("hello", 10)));
+  }
+
+  @Test
+  public void catchUpRereadsCommentsWithTheNewestIndexedTimestamp() throws IOException {
+    long now = System.currentTimeMillis();
+    Comment first = repository.add("hello first", now);
+    CommentSearchIndex.rebuild();
+    Comment second = repository.add("hello second", now);
+
+    CommentSearchIndex.nextCatchUp = 0;
+    List<Long> found = ids(CommentSearchIndex.search("hello", 10));
+
+    Collections.sort(found);
+    Assert.assertEquals(Arrays.asList(first.getId(), second.getId()), found);
+  }
+
+  private static List<Long> ids(List<Comment> comments) {
+    List<Long> ids = new ArrayList<>();
+    for (Comment comment : comments) {
+      ids.add(comment.getId());
+    }
+    return ids;
+  }
+}
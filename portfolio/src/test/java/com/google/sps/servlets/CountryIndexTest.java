@@ -0,0 +1,93 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Country;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class CountryIndexTest {
+  private static final List<Country> COUNTRIES = Arrays.asList(
+      new Country("France", "French"),
+      new Country("Belgium", "Dutch, French and German"),
+      new Country("Germany", "German"),
+      new Country("Guinea", "French"),
+      new Country("Switzerland", "German, French, Italian and Romansh"));
+
+  private static final List<List<String>> LANGUAGES = Arrays.asList(
+      Arrays.asList("French"),
+      Arrays.asList("Dutch", "French", "German"),
+      Arrays.asList("German"),
+      Arrays.asList("French", "French"),
+      Arrays.asList("German", "French", "Italian", "Romansh"));
+
+  private final CountryIndex index = new CountryIndex(COUNTRIES, LANGUAGES);
+
+  @Test
+  public void noFiltersReturnsEverything() {
+    Assert.assertEquals(names(COUNTRIES), names(index.find(null, null, null)));
+  }
+
+  @Test
+  public void findsByName() {
+    Assert.assertEquals(Arrays.asList("Germany"), names(index.find("Germany", null, null)));
+    Assert.assertEquals(Arrays.asList("Germany"), names(index.find("  gERMANY ", null, null)));
+  }
+
+  @Test
+  public void unknownNameFindsNothing() {
+    Assert.assertEquals(Arrays.asList(), names(index.find("Atlantis", null, null)));
+    Assert.assertEquals(Arrays.asList(), names(index.find("Atlantis", "French", "A")));
+  }
+
+  @Test
+  public void findsByLanguageInOriginalOrder() {
+    Assert.assertEquals(Arrays.asList("France", "Belgium", "Guinea", "Switzerland"),
+        names(index.find(null, "french", null)));
+    Assert.assertEquals(Arrays.asList(), names(index.find(null, "Klingon", null)));
+  }
+
+  @Test
+  public void findsByPrefixInOriginalOrder() {
+    Assert.assertEquals(Arrays.asList("Germany", "Guinea"), names(index.find(null, null, "g")));
+    Assert.assertEquals(Arrays.asList("Germany"), names(index.find(null, null, "Germ")));
+    Assert.assertEquals(Arrays.asList(), names(index.find(null, null, "Z")));
+  }
+
+  @Test
+  public void combinedFiltersMustAllMatch() {
+    Assert.assertEquals(Arrays.asList("Guinea"), names(index.find(null, "French", "G")));
+    Assert.assertEquals(Arrays.asList("Belgium"), names(index.find("Belgium", "Dutch", null)));
+    Assert.assertEquals(Arrays.asList(), names(index.find("Germany", "French", null)));
+    Assert.assertEquals(Arrays.asList(), names(index.find("France", null, "G")));
+    Assert.assertEquals(Arrays.asList("Switzerland"),
+        names(index.find("Switzerland", "Romansh", "Sw")));
+  }
+
+  private static List<String> names(List<Country> countries) {
+    List<String> names = new ArrayList<>();
+    for (Country country : countries) {
+      names.add(country.getCountry());
+    }
+    return names;
+  }
+}
@@ -0,0 +1,53 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EncodedJsonTest {
+  @Test
+  public void noHeaderMeansIdentity() {
+    Assert.assertFalse(EncodedJson.acceptsGzip(null));
+    Assert.assertFalse(EncodedJson.acceptsGzip(""));
+    Assert.assertFalse(EncodedJson.acceptsGzip("br, deflate"));
+  }
+
+  @Test
+  public void gzipOrWildcardIsAccepted() {
+    Assert.assertTrue(EncodedJson.acceptsGzip("gzip"));
+    Assert.assertTrue(EncodedJson.acceptsGzip("deflate, GZIP;q=0.5"));
+    Assert.assertTrue(EncodedJson.acceptsGzip("*"));
+  }
+
+  @Test
+  public void zeroQualityRefuses() {
+    Assert.assertFalse(EncodedJson.acceptsGzip("gzip;q=0"));
+    Assert.assertFalse(EncodedJson.acceptsGzip("gzip; q=0.000"));
+    Assert.assertFalse(EncodedJson.acceptsGzip("*;q=0"));
+  }
+
+  @Test
+  public void explicitGzipWinsOverWildcard() {
+    Assert.assertTrue(EncodedJson.acceptsGzip("*;q=0, gzip"));
+    Assert.assertTrue(EncodedJson.acceptsGzip("gzip;q=1, *;q=0"));
+    Assert.assertFalse(EncodedJson.acceptsGzip("*, gzip;q=0"));
+    Assert.assertFalse(EncodedJson.acceptsGzip("gzip;q=0, *"));
+  }
+}
@@ -0,0 +1,207 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentCursor;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class DatastoreCommentRepositoryTest {
+  // 2020-05-20T18:40:00Z
+  private static final long TIME = 1_590_000_000_000L;
+  private static final long DAY = 24 * 60 * 60 * 1000L;
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setDefaultHighRepJobPolicyUnappliedJobPercentage(0));
+
+  private DatastoreCommentRepository repository;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    CommentCounters.backfilled = false;
+    repository = new DatastoreCommentRepository();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void addedCommentsAreCounted() throws Exception {
+    repository.add("first", TIME);
+    repository.add("second", TIME + DAY);
+    repository.addAll(Arrays.asList(new Comment(0, "third", TIME), new Comment(0, "fourth", TIME)));
+
+    Assert.assertEquals(4, repository.count());
+    Map<String, Long> perDay = repository.countPerDay(LocalDate.parse("2020-05-01"));
+    Assert.assertEquals(Long.valueOf(3), perDay.get("2020-05-20"));
+    Assert.assertEquals(Long.valueOf(1), perDay.get("2020-05-21"));
+  }
+
+  @Test
+  public void deletedCommentsAreNoLongerCounted() throws Exception {
+    Comment first = repository.add("first", TIME);
+    Comment second = repository.add("second", TIME + 1);
+    long[] ids = repository.allocateIds(2);
+    repository.putAll(Arrays.asList(
+        new Comment(ids[0], "third", TIME + 2), new Comment(ids[1], "fourth", TIME + 3)));
+
+    Assert.assertTrue(repository.delete(first.getId()));
+    Assert.assertFalse(repository.delete(first.getId()));
+
+    Set<Long> deleted = new HashSet<>();
+    repository.deleteAll(Arrays.asList(second.getId(), ids[0], 12345L), deleted::addAll);
+
+    Assert.assertEquals(new HashSet<>(Arrays.asList(second.getId(), ids[0])), deleted);
+    Assert.assertEquals(1, repository.count());
+    Assert.assertEquals(Arrays.asList(ids[1]), ids(repository.newestFirst(null, 10)));
+  }
+
+  @Test
+  public void puttingTheSameCommentsAgainCountsThemOnce() throws Exception {
+    // Counting once first runs the backfill, which would otherwise correct any double count.
+    Assert.assertEquals(0, repository.count());
+
+    long[] ids = repository.allocateIds(2);
+    List<Comment> comments = Arrays.asList(
+        new Comment(ids[0], "first", TIME), new Comment(ids[1], "second", TIME + DAY));
+
+    repository.putAll(comments);
+    repository.putAll(comments);
+
+    Assert.assertEquals(2, repository.count());
+    Assert.assertEquals(Long.valueOf(1),
+        repository.countPerDay(LocalDate.parse("2020-05-01")).get("2020-05-20"));
+    Assert.assertEquals(2, ids(repository.newestFirst(null, 10)).size());
+  }
+
+  @Test
+  public void deleteMatchingHonorsRangeAndText() throws Exception {
+    Comment before = repository.add("spam", TIME);
+    Comment spam = repository.add("buy spam now", TIME + 10);
+    Comment ham = repository.add("ham", TIME + 20);
+    Comment after = repository.add("spam", TIME + 30);
+
+    Set<Long> deleted = new HashSet<>();
+    repository.deleteMatching(TIME + 10, TIME + 30, "spam", deleted::addAll);
+
+    Assert.assertEquals(new HashSet<>(Arrays.asList(spam.getId())), deleted);
+    Assert.assertEquals(Arrays.asList(after.getId(), ham.getId(), before.getId()),
+        ids(repository.newestFirst(null, 10)));
+    Assert.assertEquals(3, repository.count());
+  }
+
+  @Test
+  public void pagingWithCursorsVisitsEveryCommentOnce() throws Exception {
+    // Several comments share a timestamp, so pages have to split ties by id.
+    List<Comment> comments = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      comments.add(new Comment(0, "comment " + i, TIME + i / 4));
+    }
+    repository.addAll(comments);
+    List<Long> all = ids(repository.newestFirst(null, 100));
+    Assert.assertEquals(25, all.size());
+
+    List<Long> paged = new ArrayList<>();
+    CommentCursor cursor = null;
+    while (true) {
+      List<Comment> page = new ArrayList<>();
+      for (Comment comment : repository.newestFirst(cursor, 3)) {
+        page.add(comment);
+        if (page.size() == 7) {
+          break;
+        }
+      }
+      if (page.isEmpty()) {
+        break;
+      }
+      for (Comment comment : page) {
+        paged.add(comment.getId());
+      }
+      cursor = CommentCursor.after(page.get(page.size() - 1));
+    }
+
+    Assert.assertEquals(all, paged);
+  }
+
+  @Test
+  public void commentsStoredBeforeCountingAreBackfilled() throws Exception {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    for (int i = 0; i < 3; i++) {
+      Entity entity = new Entity("Comment");
+      entity.setProperty("content", "old " + i);
+      entity.setProperty("timestamp", TIME - i * DAY);
+      datastore.put(entity);
+    }
+    repository.add("new", TIME);
+
+    Assert.assertEquals(4, repository.count());
+    Assert.assertEquals(Long.valueOf(2),
+        repository.countPerDay(LocalDate.parse("2020-05-01")).get("2020-05-20"));
+
+    // Only the first read backfills.
+    CommentCounters.backfilled = false;
+    Assert.assertEquals(4, repository.count());
+  }
+
+  @Test
+  public void recountCorrectsDrift() throws Exception {
+    repository.add("first", TIME);
+    repository.add("second", TIME + DAY);
+    Assert.assertEquals(2, repository.count());
+
+    // Comments that were stored without being counted, as when a bulk write fails halfway.
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Entity entity = new Entity("Comment");
+    entity.setProperty("content", "uncounted");
+    entity.setProperty("timestamp", TIME + 2 * DAY);
+    datastore.put(entity);
+
+    Assert.assertEquals(2, repository.count());
+    Assert.assertEquals(3, repository.recount());
+    Assert.assertEquals(3, repository.count());
+    Assert.assertEquals(Long.valueOf(1),
+        repository.countPerDay(LocalDate.parse("2020-05-01")).get("2020-05-22"));
+  }
+
+  private static List<Long> ids(Iterable<Comment> comments) {
+    List<Long> ids = new ArrayList<>();
+    for (Comment comment : comments) {
+      ids.add(comment.getId());
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,253 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentCursor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class LogCommentRepositoryTest {
+  private static final long TIME = 1_590_000_000_000L;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path path;
+  private LogCommentRepository repository;
+
+  @Before
+  public void setUp() throws IOException {
+    path = folder.getRoot().toPath().resolve("comments.log");
+    repository = new LogCommentRepository(path);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    repository.close();
+  }
+
+  @Test
+  public void commentsSurviveReopening() throws IOException {
+    Comment first = repository.add("first", TIME);
+    Comment second = repository.add("second", TIME + 1);
+    repository.delete(first.getId());
+
+    reopen();
+
+    Assert.assertEquals(Arrays.asList(second.getId()), ids(repository.newestFirst(null, 10)));
+    Assert.assertEquals("second", repository.newestFirst(null, 10).iterator().next().getContent());
+  }
+
+  @Test
+  public void reopenIgnoresRecordCutOffByACrash() throws IOException {
+    Comment kept = repository.add("kept", TIME);
+    int end = logEnd(Collections.singletonList(kept));
+    repository.close();
+
+    // A comment whose type byte was never written, as if the process died while adding it. Its
+    // content holds what looks like a record deleting the kept comment.
+    ByteBuffer torn = ByteBuffer.allocate(21 + 10);
+    torn.put((byte) 0).putLong(99).putLong(TIME + 5).putInt(10);
+    torn.put((byte) 'x').put((byte) 2).putLong(kept.getId()).flip();
+    writeAt(end, torn);
+
+    repository = new LogCommentRepository(path);
+    Assert.assertEquals(Arrays.asList(kept.getId()), ids(repository.newestFirst(null, 10)));
+
+    // The next comment is written over the start of the torn one and ends right where the fake
+    // record begins.
+    Comment next = repository.add("n", TIME + 1);
+    reopen();
+
+    Assert.assertEquals(Arrays.asList(next.getId(), kept.getId()),
+        ids(repository.newestFirst(null, 10)));
+  }
+
+  @Test
+  public void reopenIgnoresRecordWithBadLength() throws IOException {
+    Comment kept = repository.add("kept", TIME);
+    int end = logEnd(Collections.singletonList(kept));
+    repository.close();
+
+    ByteBuffer corrupt = ByteBuffer.allocate(21);
+    corrupt.put((byte) 1).putLong(99).putLong(TIME + 5).putInt(Integer.MAX_VALUE).flip();
+    writeAt(end, corrupt);
+
+    repository = new LogCommentRepository(path);
+
+    Assert.assertEquals(Arrays.asList(kept.getId()), ids(repository.newestFirst(null, 10)));
+  }
+
+  @Test
+  public void deletedIdsAreNotReused() throws IOException {
+    repository.add("first", TIME);
+    Comment last = repository.add("last", TIME + 1);
+    repository.delete(last.getId());
+
+    Assert.assertTrue(repository.add("again", TIME + 2).getId() > last.getId());
+
+    reopen();
+
+    Assert.assertTrue(repository.add("after reopening", TIME + 3).getId() > last.getId() + 1);
+  }
+
+  @Test
+  public void allocatedIdsAreNotReusedAfterReopening() throws IOException {
+    long[] ids = repository.allocateIds(3);
+
+    reopen();
+
+    Assert.assertTrue(repository.add("later", TIME).getId() > ids[2]);
+  }
+
+  @Test
+  public void puttingTheSameCommentsAgainStoresThemOnce() throws IOException {
+    long[] ids = repository.allocateIds(2);
+    List<Comment> comments = Arrays.asList(
+        new Comment(ids[0], "first", TIME), new Comment(ids[1], "second", TIME + 1));
+
+    repository.putAll(comments);
+    repository.putAll(comments);
+    reopen();
+
+    Assert.assertEquals(2, repository.count());
+    Assert.assertEquals(Arrays.asList(ids[1], ids[0]), ids(repository.newestFirst(null, 10)));
+  }
+
+  @Test
+  public void compactionKeepsLiveCommentsAndShrinksTheLog() throws IOException {
+    char[] filler = new char[4000];
+    Arrays.fill(filler, 'a');
+    List<Comment> comments = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      comments.add(new Comment(0, new String(filler), TIME + i));
+    }
+    List<Comment> stored = repository.addAll(comments);
+    long sizeBefore = Files.size(path);
+
+    List<Long> doomed = new ArrayList<>();
+    for (Comment comment : stored.subList(0, stored.size() - 2)) {
+      doomed.add(comment.getId());
+    }
+    repository.deleteAll(doomed, ids -> { });
+
+    Assert.assertTrue(Files.size(path) < sizeBefore);
+    Assert.assertFalse(Files.exists(path.resolveSibling("comments.log.compacting")));
+
+    List<Long> expected = Arrays.asList(stored.get(299).getId(), stored.get(298).getId());
+    Assert.assertEquals(expected, ids(repository.newestFirst(null, 10)));
+
+    reopen();
+
+    Assert.assertEquals(expected, ids(repository.newestFirst(null, 10)));
+    Assert.assertEquals(new String(filler),
+        repository.newestFirst(null, 10).iterator().next().getContent());
+    Assert.assertTrue(repository.add("after", TIME).getId() > stored.get(299).getId());
+  }
+
+  @Test
+  public void pagingWithCursorsVisitsEveryCommentOnce() throws IOException {
+    // Several comments share a timestamp, so pages have to split ties by id.
+    List<Comment> comments = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      comments.add(new Comment(0, "comment " + i, TIME + i / 4));
+    }
+    repository.addAll(comments);
+    List<Long> all = ids(repository.newestFirst(null, 100));
+    Assert.assertEquals(25, all.size());
+
+    List<Long> paged = new ArrayList<>();
+    CommentCursor cursor = null;
+    while (true) {
+      List<Comment> page = new ArrayList<>();
+      for (Comment comment : repository.newestFirst(cursor, 3)) {
+        page.add(comment);
+        if (page.size() == 7) {
+          break;
+        }
+      }
+      if (page.isEmpty()) {
+        break;
+      }
+      for (Comment comment : page) {
+        paged.add(comment.getId());
+      }
+      cursor = CommentCursor.after(page.get(page.size() - 1));
+    }
+
+    Assert.assertEquals(all, paged);
+  }
+
+  @Test
+  public void newestFirstOrdersByTimestampThenId() throws IOException {
+    Comment older = repository.add("older", TIME);
+    Comment newer = repository.add("newer", TIME + 10);
+    Comment tieA = repository.add("tie a", TIME + 5);
+    Comment tieB = repository.add("tie b", TIME + 5);
+
+    Assert.assertEquals(
+        Arrays.asList(newer.getId(), tieA.getId(), tieB.getId(), older.getId()),
+        ids(repository.newestFirst(null, 2)));
+  }
+
+  private void reopen() throws IOException {
+    repository.close();
+    repository = new LogCommentRepository(path);
+  }
+
+  /** Returns where the log ends when it holds just the given comments, added in order. */
+  private static int logEnd(List<Comment> comments) {
+    int end = 0;
+    for (Comment comment : comments) {
+      end += 21 + comment.getContent().getBytes(StandardCharsets.UTF_8).length;
+    }
+    return end;
+  }
+
+  private void writeAt(int position, ByteBuffer bytes) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      while (bytes.hasRemaining()) {
+        position += channel.write(bytes, position);
+      }
+    }
+  }
+
+  private static List<Long> ids(Iterable<Comment> comments) {
+    List<Long> ids = new ArrayList<>();
+    for (Comment comment : comments) {
+      ids.add(comment.getId());
+    }
+    return ids;
+  }
+}
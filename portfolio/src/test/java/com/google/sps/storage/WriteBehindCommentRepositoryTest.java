@@ -0,0 +1,352 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentCursor;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class WriteBehindCommentRepositoryTest {
+  private static final long TIME = 1_590_000_000_000L;
+
+  private final FakeStore store = new FakeStore();
+  private WriteBehindCommentRepository repository;
+
+  @After
+  public void tearDown() throws IOException {
+    if (repository != null) {
+      repository.close();
+    }
+  }
+
+  @Test
+  public void queuedCommentsAreWrittenInGroups() throws Exception {
+    repository = new WriteBehindCommentRepository(store, 100, 10, 50);
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      ids.add(repository.add("comment " + i, TIME + i).getId());
+    }
+
+    Assert.assertTrue(repository.flush());
+
+    // A comment the flusher took just as flush() drained the queue is written after the others.
+    List<Long> stored = store.storedIds();
+    Collections.sort(stored);
+    Assert.assertEquals(ids, stored);
+    for (List<Comment> group : store.puts) {
+      Assert.assertTrue(group.size() <= 10);
+    }
+  }
+
+  @Test
+  public void failedGroupIsRetriedBeforeNewerComments() throws Exception {
+    repository = new WriteBehindCommentRepository(store, 100, 10, 0);
+    store.failNext(2);
+
+    Comment first = repository.add("first", TIME);
+    waitForFailures(2);
+    Comment second = repository.add("second", TIME + 1);
+    waitUntilStored(2);
+
+    Assert.assertEquals(Arrays.asList(first.getId(), second.getId()), store.storedIds());
+    Assert.assertEquals(0, repository.queueDepth());
+  }
+
+  @Test
+  public void retriesBackOffExponentially() throws Exception {
+    repository = new WriteBehindCommentRepository(store, 100, 10, 0);
+    store.failNext(4);
+
+    repository.add("comment", TIME);
+    waitUntilStored(1);
+
+    // 1 failed attempt, then pauses of at least 50, 100, 200 and 400 ms before the next ones.
+    List<Long> times = store.attemptNanos;
+    Assert.assertEquals(5, times.size());
+    for (int i = 1; i < times.size(); i++) {
+      long pauseMillis = (times.get(i) - times.get(i - 1)) / 1_000_000;
+      Assert.assertTrue("pause " + i + " was " + pauseMillis + " ms",
+          pauseMillis >= 50L << (i - 1));
+    }
+  }
+
+  @Test
+  public void flushReportsFailureAndKeepsComments() throws Exception {
+    repository = new WriteBehindCommentRepository(store, 100, 10, 5);
+    store.failNext(1000);
+
+    Comment comment = repository.add("comment", TIME);
+
+    Assert.assertFalse(repository.flush());
+    Assert.assertEquals(1, repository.queueDepth());
+
+    store.failNext(0);
+    Assert.assertTrue(repository.flush());
+    Assert.assertEquals(Arrays.asList(comment.getId()), store.storedIds());
+  }
+
+  @Test
+  public void deleteFailsWhenQueuedCommentsCannotBeWritten() throws Exception {
+    repository = new WriteBehindCommentRepository(store, 100, 10, 5);
+    store.failNext(1000);
+    Comment comment = repository.add("comment", TIME);
+
+    try {
+      repository.delete(comment.getId());
+      Assert.fail("delete should fail while the queue cannot be written");
+    } catch (IOException expected) {
+      // The comment is still queued, so deleting it now would let the flusher store it again.
+    }
+
+    store.failNext(0);
+    Assert.assertTrue(repository.delete(comment.getId()));
+    Assert.assertTrue(repository.flush());
+    Assert.assertTrue(store.storedIds().isEmpty());
+  }
+
+  @Test
+  public void groupStoredDespiteFailureIsRetriedAsItWasAndCountedOnce() throws Exception {
+    repository = new WriteBehindCommentRepository(store, 100, 10, 5);
+    store.failAfterCommitNext(1);
+
+    Comment first = repository.add("first", TIME);
+    waitForFailures(1);
+    Comment second = repository.add("second", TIME + 1);
+    Comment third = repository.add("third", TIME + 2);
+
+    Assert.assertEquals(3, repository.count());
+    Assert.assertEquals(Arrays.asList(first.getId(), second.getId(), third.getId()),
+        store.storedIds());
+    Assert.assertEquals(Arrays.asList(first), store.puts.get(1));
+  }
+
+  @Test
+  public void closeWritesWhatIsLeftAfterFailures() throws Exception {
+    repository = new WriteBehindCommentRepository(store, 100, 10, 5);
+    Comment comment = repository.add("comment", TIME);
+    store.failNext(2);
+
+    repository.close();
+    repository = null;
+
+    Assert.assertEquals(Arrays.asList(comment.getId()), store.storedIds());
+  }
+
+  @Test
+  public void interruptedFlusherWritesTheGroupItWasGathering() throws Exception {
+    // The group would wait a long time for more comments before it is written.
+    repository = new WriteBehindCommentRepository(store, 100, 10, 60_000);
+    Comment comment = repository.add("comment", TIME);
+    Thread.sleep(100);
+    Assert.assertTrue(store.storedIds().isEmpty());
+
+    Thread flusher = findThread("comment-write-behind");
+    flusher.interrupt();
+    flusher.join(5_000);
+
+    Assert.assertFalse(flusher.isAlive());
+    Assert.assertEquals(Arrays.asList(comment.getId()), store.storedIds());
+
+    // Without a flusher, comments are written right away.
+    Comment later = repository.add("later", TIME + 1);
+    Assert.assertEquals(Arrays.asList(comment.getId(), later.getId()), store.storedIds());
+  }
+
+  @Test
+  public void readsSeeQueuedComments() throws Exception {
+    repository = new WriteBehindCommentRepository(store, 100, 10, 5);
+    Comment comment = repository.add("comment", TIME);
+
+    Iterable<Comment> feed = repository.newestFirst(null, 10);
+
+    Assert.assertEquals(comment.getId(), feed.iterator().next().getId());
+  }
+
+  @Test
+  public void countsFlushFirst() throws Exception {
+    repository = new WriteBehindCommentRepository(store, 100, 10, 5);
+    repository.add("comment", TIME);
+
+    Assert.assertEquals(1, repository.count());
+  }
+
+  private void waitForFailures(int failures) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (store.failures() < failures) {
+      Assert.assertTrue("timed out", System.currentTimeMillis() < deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  private void waitUntilStored(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (store.storedIds().size() < count) {
+      Assert.assertTrue("timed out", System.currentTimeMillis() < deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  private static Thread findThread(String name) {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals(name) && thread.isAlive()) {
+        return thread;
+      }
+    }
+    throw new AssertionError("No thread named " + name);
+  }
+
+  /**
+   * Keeps comments in memory, and fails as many putAll calls as it is told to. Like Datastore, a
+   * comment stored twice is kept once, and the count goes up once for every different group of
+   * comments that is put.
+   */
+  private static final class FakeStore implements CommentRepository {
+    final List<List<Comment>> puts = new ArrayList<>();
+    final List<Long> attemptNanos = new ArrayList<>();
+    private final List<Comment> stored = new ArrayList<>();
+    private final Set<List<Long>> countedGroups = new HashSet<>();
+    private long counted = 0;
+    private long nextId = 1;
+    private int toFail = 0;
+    private int toFailAfterCommit = 0;
+    private int failures = 0;
+
+    synchronized void failNext(int count) {
+      toFail = count;
+    }
+
+    /** Makes the next count putAll calls store their comments and then fail anyway. */
+    synchronized void failAfterCommitNext(int count) {
+      toFailAfterCommit = count;
+    }
+
+    synchronized int failures() {
+      return failures;
+    }
+
+    synchronized List<Long> storedIds() {
+      List<Long> ids = new ArrayList<>();
+      for (Comment comment : stored) {
+        ids.add(comment.getId());
+      }
+      return ids;
+    }
+
+    @Override
+    public synchronized long[] allocateIds(int count) {
+      long[] ids = new long[count];
+      for (int i = 0; i < count; i++) {
+        ids[i] = nextId++;
+      }
+      return ids;
+    }
+
+    @Override
+    public synchronized void putAll(List<Comment> comments) throws IOException {
+      attemptNanos.add(System.nanoTime());
+      if (toFail > 0) {
+        toFail--;
+        failures++;
+        throw new IOException("Failing on purpose");
+      }
+
+      puts.add(new ArrayList<>(comments));
+      List<Long> ids = new ArrayList<>();
+      for (Comment comment : comments) {
+        ids.add(comment.getId());
+        if (!storedIds().contains(comment.getId())) {
+          stored.add(comment);
+        }
+      }
+      if (countedGroups.add(ids)) {
+        counted += comments.size();
+      }
+
+      if (toFailAfterCommit > 0) {
+        toFailAfterCommit--;
+        failures++;
+        throw new IOException("Failing on purpose after storing");
+      }
+    }
+
+    @Override
+    public synchronized long count() {
+      return counted;
+    }
+
+    @Override
+    public Comment add(String content, long timestamp) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Comment> addAll(List<Comment> comments) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized boolean delete(long id) {
+      boolean deleted = stored.removeIf(comment -> comment.getId() == id);
+      if (deleted) {
+        counted--;
+      }
+      return deleted;
+    }
+
+    @Override
+    public void deleteAll(Collection<Long> ids, Consumer<Set<Long>> onChunk) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteMatching(Long from, Long to, String contains, Consumer<Set<Long>> onChunk) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized Iterable<Comment> newestFirst(CommentCursor cursor, int chunkSize) {
+      List<Comment> newestFirst = new ArrayList<>(stored);
+      newestFirst.sort((a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
+      return newestFirst;
+    }
+
+    @Override
+    public Map<String, Long> countPerDay(LocalDate firstDay) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long recount() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
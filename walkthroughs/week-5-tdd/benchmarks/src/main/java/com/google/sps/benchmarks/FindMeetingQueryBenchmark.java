@@ -0,0 +1,66 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.AttendeeCalendar;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.RankedTimeRange;
+import com.google.sps.TimeRange;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures answering a single meeting request against a synthetic calendar. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FindMeetingQueryBenchmark {
+  private final FindMeetingQuery query = new FindMeetingQuery();
+
+  /** Scans every event in the calendar, as the original servlet did on every request. */
+  @Benchmark
+  public Collection<TimeRange> queryEvents(SyntheticCalendar calendar) {
+    return query.query(calendar.events, calendar.request);
+  }
+
+  /** Only touches the busy times of the requested attendees. */
+  @Benchmark
+  public Collection<TimeRange> queryIndexed(SyntheticCalendar calendar) {
+    return query.query(calendar.calendar, calendar.request);
+  }
+
+  @Benchmark
+  public List<RankedTimeRange> queryRanked(SyntheticCalendar calendar) {
+    return query.queryRanked(calendar.calendar, calendar.request);
+  }
+
+  /** The one-off cost paid before indexed queries can run. */
+  @Benchmark
+  public AttendeeCalendar buildIndex(SyntheticCalendar calendar) {
+    return new AttendeeCalendar(calendar.events);
+  }
+}
@@ -0,0 +1,56 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.BusyIntervals;
+import com.google.sps.TimeRange;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ordering the busy times of the requested attendees. {@code sortTimeRanges} is the
+ * boxed stream sort that {@code FindMeetingQuery.getInbetweenRanges} used to do, and
+ * {@code sortPacked} is the primitive sort and merge that replaced it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+  @Benchmark
+  public List<TimeRange> sortTimeRanges(SyntheticCalendar calendar) {
+    return calendar.events.stream()
+        .filter(event -> !Collections.disjoint(
+            event.getAttendees(), calendar.request.getAttendees()))
+        .map(event -> event.getWhen())
+        .sorted(TimeRange.ORDER_BY_START)
+        .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public BusyIntervals sortPacked(SyntheticCalendar calendar) {
+    return BusyIntervals.of(calendar.events, calendar.request.getAttendees());
+  }
+}
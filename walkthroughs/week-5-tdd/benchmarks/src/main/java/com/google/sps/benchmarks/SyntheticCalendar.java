@@ -0,0 +1,116 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.AttendeeCalendar;
+import com.google.sps.Event;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A randomly generated calendar along with a meeting request against it. Every parameter can be
+ * overridden from the command line, e.g. {@code -p attendees=5000}.
+ */
+@State(Scope.Benchmark)
+public class SyntheticCalendar {
+  private static final int WORK_DAY_START = TimeRange.getTimeInMinutes(8, 0);
+  private static final int WORK_DAY_END = TimeRange.getTimeInMinutes(18, 0);
+  private static final int[] DURATIONS = {15, 30, 30, 60, 60, 90, 120};
+
+  /** The number of people in the calendar. */
+  @Param({"100", "1000"})
+  public int attendees;
+
+  /** The number of events each person has in a day. */
+  @Param({"4", "16"})
+  public int eventsPerAttendee;
+
+  /** The chance that an event starts while the person's previous event is still going on. */
+  @Param({"0.1", "0.5"})
+  public double overlapDensity;
+
+  /** The number of people invited to the requested meeting. */
+  @Param({"10"})
+  public int requestAttendees;
+
+  /** The share of invited people who are optional rather than mandatory. */
+  @Param({"0.0", "0.5"})
+  public double optionalRatio;
+
+  /** The length of the requested meeting in minutes. */
+  @Param({"30"})
+  public int meetingDuration;
+
+  public List<Event> events;
+  public AttendeeCalendar calendar;
+  public MeetingRequest request;
+
+  @Setup(Level.Trial)
+  public void generate() {
+    // A fixed seed keeps runs with the same parameters comparable.
+    Random random = new Random(42);
+    events = new ArrayList<>(attendees * eventsPerAttendee);
+
+    for (int person = 0; person < attendees; person++) {
+      String name = name(person);
+      int previousStart = WORK_DAY_START;
+      int previousEnd = WORK_DAY_START;
+
+      for (int i = 0; i < eventsPerAttendee; i++) {
+        int duration = DURATIONS[random.nextInt(DURATIONS.length)];
+        int start;
+        if (previousEnd > previousStart && random.nextDouble() < overlapDensity) {
+          start = previousStart + random.nextInt(previousEnd - previousStart);
+        } else {
+          start = WORK_DAY_START + random.nextInt(WORK_DAY_END - WORK_DAY_START);
+        }
+        int end = Math.min(start + duration, TimeRange.END_OF_DAY);
+
+        events.add(new Event(name + " event " + i, TimeRange.fromStartEnd(start, end, false),
+            Arrays.asList(name)));
+        previousStart = start;
+        previousEnd = end;
+      }
+    }
+
+    // Shuffle so that nothing depends on the events being grouped by person.
+    Collections.shuffle(events, random);
+    calendar = new AttendeeCalendar(events);
+
+    int optionalCount = (int) Math.round(requestAttendees * optionalRatio);
+    List<String> mandatory = new ArrayList<>();
+    for (int i = optionalCount; i < requestAttendees; i++) {
+      mandatory.add(name(random.nextInt(attendees)));
+    }
+    request = new MeetingRequest(mandatory, meetingDuration);
+    for (int i = 0; i < optionalCount; i++) {
+      request.addOptionalAttendee(name(random.nextInt(attendees)));
+    }
+  }
+
+  private static String name(int person) {
+    return "Person " + person;
+  }
+}
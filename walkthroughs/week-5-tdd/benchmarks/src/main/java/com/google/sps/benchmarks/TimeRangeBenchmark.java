@@ -0,0 +1,65 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.TimeRange;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures the pairwise checks on {@code TimeRange} over every event of a synthetic calendar. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeRangeBenchmark {
+  private TimeRange[] ranges;
+
+  @Setup(Level.Trial)
+  public void collectRanges(SyntheticCalendar calendar) {
+    ranges = new TimeRange[calendar.events.size()];
+    for (int i = 0; i < ranges.length; i++) {
+      ranges[i] = calendar.events.get(i).getWhen();
+    }
+  }
+
+  /** Compares each range with its neighbour, so the cost per operation is one call per range. */
+  @Benchmark
+  public void overlaps(Blackhole blackhole) {
+    for (int i = 1; i < ranges.length; i++) {
+      blackhole.consume(ranges[i - 1].overlaps(ranges[i]));
+    }
+  }
+
+  @Benchmark
+  public void contains(Blackhole blackhole) {
+    for (int i = 1; i < ranges.length; i++) {
+      blackhole.consume(ranges[i - 1].contains(ranges[i]));
+    }
+  }
+}
@@ -0,0 +1,156 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index from each attendee to the times they are busy. The index is built once from a
+ * collection of events, after which looking up a group of attendees only touches the busy times of
+ * the people in that group. Calendars are considered read-only.
+ */
+public final class AttendeeCalendar {
+  private final Map<String, BusyIntervals> busyByAttendee;
+
+  // Bitmaps are only built for attendees whose free minutes have been asked for.
+  private final Map<String, MinuteBitmap> freeMinutesByAttendee = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new calendar containing every event in {@code events}.
+   */
+  public AttendeeCalendar(Collection<Event> events) {
+    Builder builder = new Builder();
+    for (Event event : events) {
+      builder.add(event);
+    }
+    this.busyByAttendee = builder.buildIndex();
+  }
+
+  private AttendeeCalendar(Map<String, BusyIntervals> busyByAttendee) {
+    this.busyByAttendee = busyByAttendee;
+  }
+
+  /**
+   * Returns the merged busy times of a single attendee.
+   */
+  public BusyIntervals busyIntervals(String attendee) {
+    return busyByAttendee.getOrDefault(attendee, BusyIntervals.EMPTY);
+  }
+
+  /**
+   * Returns the merged busy times of everyone in {@code attendees}.
+   */
+  public BusyIntervals busyIntervals(Collection<String> attendees) {
+    List<BusyIntervals> busy = new ArrayList<>(attendees.size());
+    for (String attendee : attendees) {
+      BusyIntervals intervals = busyByAttendee.get(attendee);
+      if (intervals != null) {
+        busy.add(intervals);
+      }
+    }
+
+    // A single attendee's intervals are already merged, so there is nothing left to do.
+    if (busy.isEmpty()) {
+      return BusyIntervals.EMPTY;
+    } else if (busy.size() == 1) {
+      return busy.get(0);
+    }
+    return BusyIntervals.union(busy);
+  }
+
+  /**
+   * Returns the minutes of the day where everyone in {@code attendees} is free. The returned bitmap
+   * belongs to the caller and can be changed freely.
+   */
+  public MinuteBitmap freeMinutes(Collection<String> attendees) {
+    MinuteBitmap free = MinuteBitmap.allFree();
+    for (String attendee : attendees) {
+      BusyIntervals busy = busyByAttendee.get(attendee);
+      if (busy != null) {
+        free.and(
+            freeMinutesByAttendee.computeIfAbsent(attendee, key -> MinuteBitmap.fromBusy(busy)));
+      }
+    }
+    return free;
+  }
+
+  /**
+   * Returns a read-only view of every attendee that has at least one event.
+   */
+  public Collection<String> getAttendees() {
+    return Collections.unmodifiableSet(busyByAttendee.keySet());
+  }
+
+  /**
+   * Collects busy times one event at a time so that a calendar can be built without holding on to
+   * the events themselves.
+   */
+  public static final class Builder {
+    private final Map<String, PackedRanges> rangesByAttendee = new HashMap<>();
+
+    /**
+     * Adds an event to the calendar being built.
+     */
+    public Builder add(Event event) {
+      TimeRange when = event.getWhen();
+      return add(event.getAttendees(), when.start(), when.end());
+    }
+
+    /**
+     * Marks every attendee in {@code attendees} as busy from {@code start} (inclusive) to
+     * {@code end} (exclusive).
+     */
+    public Builder add(Collection<String> attendees, int start, int end) {
+      long range = BusyIntervals.pack(start, end);
+      for (String attendee : attendees) {
+        rangesByAttendee.computeIfAbsent(attendee, key -> new PackedRanges()).add(range);
+      }
+      return this;
+    }
+
+    public AttendeeCalendar build() {
+      return new AttendeeCalendar(buildIndex());
+    }
+
+    private Map<String, BusyIntervals> buildIndex() {
+      Map<String, BusyIntervals> index = new HashMap<>();
+      for (Map.Entry<String, PackedRanges> entry : rangesByAttendee.entrySet()) {
+        PackedRanges ranges = entry.getValue();
+        index.put(entry.getKey(), BusyIntervals.fromPacked(ranges.values, ranges.size));
+      }
+      return index;
+    }
+  }
+
+  /** A growable array of ranges packed by {@link BusyIntervals#pack}. */
+  private static final class PackedRanges {
+    private long[] values = new long[4];
+    private int size;
+
+    void add(long value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+  }
+}
@@ -0,0 +1,292 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A sorted set of busy times stored as two parallel {@code int} arrays. Overlapping ranges are
+ * merged when the set is built, so the free slots of a day (or of any longer horizon) can be found
+ * in a single sweep without creating an object per busy range.
+ */
+public final class BusyIntervals {
+  public static final BusyIntervals EMPTY = new BusyIntervals(new int[0], new int[0]);
+
+  // Start (inclusive) and end (exclusive) of every busy interval, sorted by start. Intervals never
+  // overlap, but an interval may end exactly where the next one starts.
+  private final int[] starts;
+  private final int[] ends;
+
+  private BusyIntervals(int[] starts, int[] ends) {
+    this.starts = starts;
+    this.ends = ends;
+  }
+
+  /**
+   * Builds the busy intervals of everyone in {@code attendees}. Only events that at least one of
+   * the attendees is going to are taken into account.
+   */
+  public static BusyIntervals of(Collection<Event> events, Collection<String> attendees) {
+    long[] packed = new long[events.size()];
+    int count = 0;
+
+    for (Event event : events) {
+      if (!Collections.disjoint(event.getAttendees(), attendees)) {
+        TimeRange when = event.getWhen();
+        packed[count++] = pack(when.start(), when.end());
+      }
+    }
+
+    return fromPacked(packed, count);
+  }
+
+  /**
+   * Returns the union of all the given intervals.
+   */
+  public static BusyIntervals union(Collection<BusyIntervals> intervals) {
+    int total = 0;
+    for (BusyIntervals busy : intervals) {
+      total += busy.size();
+    }
+
+    long[] packed = new long[total];
+    int count = 0;
+    for (BusyIntervals busy : intervals) {
+      for (int i = 0; i < busy.size(); i++) {
+        packed[count++] = pack(busy.starts[i], busy.ends[i]);
+      }
+    }
+
+    return fromPacked(packed, count);
+  }
+
+  /**
+   * Sorts the first {@code count} packed ranges and merges the ones that overlap.
+   */
+  static BusyIntervals fromPacked(long[] packed, int count) {
+    if (count == 0) {
+      return EMPTY;
+    }
+
+    // Sorting the packed values orders the ranges by start and then by end.
+    Arrays.sort(packed, 0, count);
+
+    int[] starts = new int[count];
+    int[] ends = new int[count];
+    int size = 0;
+
+    for (int i = 0; i < count; i++) {
+      int start = (int) (packed[i] >> 32);
+      int end = (int) packed[i];
+
+      // Ranges that merely touch are kept apart so that zero-length slots between back-to-back
+      // events are reported the same way as before.
+      if (size > 0 && start < ends[size - 1]) {
+        ends[size - 1] = Math.max(ends[size - 1], end);
+      } else {
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+      }
+    }
+
+    return new BusyIntervals(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+  }
+
+  /**
+   * Returns the number of disjoint busy intervals.
+   */
+  public int size() {
+    return starts.length;
+  }
+
+  /**
+   * Returns the start of the {@code index}th busy interval.
+   */
+  public int start(int index) {
+    return starts[index];
+  }
+
+  /**
+   * Returns the exclusive end of the {@code index}th busy interval.
+   */
+  public int end(int index) {
+    return ends[index];
+  }
+
+  /**
+   * Finds every free range of the day that is at least {@code minDuration} minutes long.
+   *
+   * Input       |--A--|   |--B--|         |---C---|
+   * Return  |-1-|     |-2-|     |----3----|       |---4---|
+   */
+  public List<TimeRange> freeSlots(long minDuration) {
+    return freeSlots(TimeRange.WHOLE_DAY, Collections.emptyList(), minDuration);
+  }
+
+  /**
+   * Finds every free range inside {@code horizon} that is at least {@code minDuration} minutes
+   * long, treating every occurrence of {@code recurringEvents} as busy as well. Occurrences are
+   * generated one at a time while sweeping, in start order, so they never exist as objects.
+   */
+  public List<TimeRange> freeSlots(TimeRange horizon, Collection<RecurringEvent> recurringEvents,
+      long minDuration) {
+    List<TimeRange> slots = new ArrayList<>();
+    OccurrenceQueue occurrences = new OccurrenceQueue(recurringEvents, horizon);
+
+    int next = 0;
+    long freeFrom = horizon.start();
+
+    while (true) {
+      // Take whichever busy range starts first: the next fixed interval or the next occurrence.
+      long start;
+      long end;
+      boolean fixedFirst = next < starts.length
+          && (occurrences.isEmpty() || starts[next] <= occurrences.peekStart());
+      if (fixedFirst) {
+        start = starts[next];
+        end = ends[next];
+        next++;
+      } else if (!occurrences.isEmpty()) {
+        start = occurrences.peekStart();
+        end = occurrences.pollEnd();
+      } else {
+        break;
+      }
+
+      if (start >= horizon.end()) {
+        break;
+      }
+
+      // Ranges that merely touch still leave a zero-length slot between them, like the merge in
+      // fromPacked does.
+      if (start >= freeFrom) {
+        if (start - freeFrom >= minDuration) {
+          slots.add(TimeRange.fromStartEnd((int) freeFrom, (int) start, false));
+        }
+        freeFrom = end;
+      } else {
+        freeFrom = Math.max(freeFrom, end);
+      }
+    }
+
+    if (horizon.end() - freeFrom >= minDuration) {
+      slots.add(TimeRange.fromStartEnd((int) freeFrom, horizon.end(), false));
+    }
+
+    return slots;
+  }
+
+  static long pack(int start, int end) {
+    return ((long) start << 32) | (end & 0xFFFFFFFFL);
+  }
+
+  /**
+   * A binary min-heap over the next occurrence of each recurring event, keyed by start time. Each
+   * event has at most one entry, so the heap never grows past the number of recurring events.
+   */
+  private static final class OccurrenceQueue {
+    private final RecurringEvent[] events;
+    private final long[] nextIndex;
+    private final long horizonEnd;
+
+    // Entries are packed as (start << 32 | event) so that plain long comparisons order them.
+    private final long[] heap;
+    private int size;
+
+    OccurrenceQueue(Collection<RecurringEvent> recurringEvents, TimeRange horizon) {
+      this.events = recurringEvents.toArray(new RecurringEvent[0]);
+      this.nextIndex = new long[events.length];
+      this.horizonEnd = horizon.end();
+      this.heap = new long[events.length];
+
+      for (int i = 0; i < events.length; i++) {
+        nextIndex[i] = events[i].firstOccurrenceEndingAfter(horizon.start());
+        offer(i);
+      }
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    long peekStart() {
+      return heap[0] >> 32;
+    }
+
+    /**
+     * Removes the earliest occurrence, returns its end and queues the next occurrence of the same
+     * event.
+     */
+    long pollEnd() {
+      int event = (int) heap[0];
+      long end = peekStart() + events[event].getFirst().duration();
+
+      heap[0] = heap[--size];
+      siftDown(0);
+
+      nextIndex[event]++;
+      offer(event);
+      return end;
+    }
+
+    private void offer(int event) {
+      if (nextIndex[event] >= events[event].getOccurrences()) {
+        return;
+      }
+
+      long start = events[event].occurrenceStart(nextIndex[event]);
+      if (start >= horizonEnd) {
+        return;
+      }
+
+      int i = size++;
+      heap[i] = (start << 32) | event;
+      while (i > 0 && heap[(i - 1) / 2] > heap[i]) {
+        swap(i, (i - 1) / 2);
+        i = (i - 1) / 2;
+      }
+    }
+
+    private void siftDown(int i) {
+      while (true) {
+        int smallest = i;
+        int left = 2 * i + 1;
+        int right = left + 1;
+        if (left < size && heap[left] < heap[smallest]) {
+          smallest = left;
+        }
+        if (right < size && heap[right] < heap[smallest]) {
+          smallest = right;
+        }
+        if (smallest == i) {
+          return;
+        }
+        swap(i, smallest);
+        i = smallest;
+      }
+    }
+
+    private void swap(int a, int b) {
+      long tmp = heap[a];
+      heap[a] = heap[b];
+      heap[b] = tmp;
+    }
+  }
+}
@@ -0,0 +1,190 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A calendar that can be changed one event at a time. Free slots are cached per group of attendees
+ * and meeting duration, and a change only throws away the cached results of groups that include
+ * someone attending the changed event. All methods are safe to call from several threads.
+ */
+public final class CalendarService {
+  private final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+
+  // The events of every attendee. An event with several attendees is in several lists.
+  private final Map<String, List<Event>> eventsByAttendee = new HashMap<>();
+
+  // Merged busy times of single attendees, rebuilt the next time they are needed after a change.
+  private final Map<String, BusyIntervals> busyByAttendee = new HashMap<>();
+
+  // Free slots per group of attendees, kept in least-recently-used order.
+  private final LinkedHashMap<FreeSlotKey, List<TimeRange>> freeSlotCache;
+
+  /**
+   * Creates an empty calendar.
+   *
+   * @param cacheCapacity The most free-slot results to keep at once. Must be positive.
+   */
+  public CalendarService(int cacheCapacity) {
+    if (cacheCapacity <= 0) {
+      throw new IllegalArgumentException("cacheCapacity must be positive");
+    }
+
+    this.freeSlotCache = new LinkedHashMap<FreeSlotKey, List<TimeRange>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<FreeSlotKey, List<TimeRange>> eldest) {
+        return size() > cacheCapacity;
+      }
+    };
+  }
+
+  /**
+   * Adds an event to the calendar.
+   */
+  public synchronized void add(Event event) {
+    for (String attendee : event.getAttendees()) {
+      eventsByAttendee.computeIfAbsent(attendee, key -> new ArrayList<>()).add(event);
+    }
+    invalidate(event.getAttendees());
+  }
+
+  /**
+   * Removes one copy of {@code event} from the calendar.
+   *
+   * @return {@code true} if the event was in the calendar
+   */
+  public synchronized boolean remove(Event event) {
+    boolean removed = false;
+    for (String attendee : event.getAttendees()) {
+      List<Event> events = eventsByAttendee.get(attendee);
+      if (events != null && events.remove(event)) {
+        removed = true;
+        if (events.isEmpty()) {
+          eventsByAttendee.remove(attendee);
+        }
+      }
+    }
+
+    if (removed) {
+      invalidate(event.getAttendees());
+    }
+    return removed;
+  }
+
+  /**
+   * Moves {@code event} to a new time, keeping its title and attendees.
+   *
+   * @return The event at its new time, or {@code null} if {@code event} was not in the calendar.
+   */
+  public synchronized Event move(Event event, TimeRange when) {
+    if (!remove(event)) {
+      return null;
+    }
+
+    Event moved = new Event(event.getTitle(), when, event.getAttendees());
+    add(moved);
+    return moved;
+  }
+
+  /**
+   * Finds all possible time ranges for a meeting, with the same rules as
+   * {@link FindMeetingQuery#query(Collection, MeetingRequest)}.
+   */
+  public synchronized Collection<TimeRange> query(MeetingRequest request) {
+    long duration = request.getDuration();
+    return findMeetingQuery.query(attendees -> freeSlots(attendees, duration), request);
+  }
+
+  /**
+   * Returns the number of free-slot results currently cached.
+   */
+  synchronized int cachedResultCount() {
+    return freeSlotCache.size();
+  }
+
+  private List<TimeRange> freeSlots(Collection<String> attendees, long duration) {
+    FreeSlotKey key = new FreeSlotKey(attendees, duration);
+    List<TimeRange> slots = freeSlotCache.get(key);
+    if (slots == null) {
+      List<BusyIntervals> busy = new ArrayList<>(attendees.size());
+      for (String attendee : attendees) {
+        busy.add(busyIntervals(attendee));
+      }
+      slots = Collections.unmodifiableList(BusyIntervals.union(busy).freeSlots(duration));
+      freeSlotCache.put(key, slots);
+    }
+    return slots;
+  }
+
+  private BusyIntervals busyIntervals(String attendee) {
+    List<Event> events = eventsByAttendee.get(attendee);
+    if (events == null) {
+      return BusyIntervals.EMPTY;
+    }
+    return busyByAttendee.computeIfAbsent(
+        attendee, key -> BusyIntervals.of(events, Collections.singleton(key)));
+  }
+
+  /** Forgets everything derived from the events of {@code attendees}. */
+  private void invalidate(Set<String> attendees) {
+    if (attendees.isEmpty()) {
+      return;
+    }
+
+    busyByAttendee.keySet().removeAll(attendees);
+
+    Iterator<FreeSlotKey> keys = freeSlotCache.keySet().iterator();
+    while (keys.hasNext()) {
+      if (!Collections.disjoint(keys.next().attendees, attendees)) {
+        keys.remove();
+      }
+    }
+  }
+
+  /** Identifies a cached result. The order of the attendees doesn't matter. */
+  private static final class FreeSlotKey {
+    private final Set<String> attendees;
+    private final long duration;
+
+    FreeSlotKey(Collection<String> attendees, long duration) {
+      this.attendees = new HashSet<>(attendees);
+      this.duration = duration;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof FreeSlotKey)) {
+        return false;
+      }
+      FreeSlotKey key = (FreeSlotKey) other;
+      return duration == key.duration && attendees.equals(key.attendees);
+    }
+
+    @Override
+    public int hashCode() {
+      return attendees.hashCode() ^ Long.hashCode(duration);
+    }
+  }
+}
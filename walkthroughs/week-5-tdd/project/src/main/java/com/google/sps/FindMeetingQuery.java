@@ -14,12 +14,12 @@
 
 package com.google.sps;
 
-import java.lang.Object;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Stream;
 import java.util.stream.Collectors;
 
@@ -35,12 +35,188 @@ public final class FindMeetingQuery {
   *                during which all guests are available. 
   */
   public Collection<TimeRange> query(Collection<Event> events, MeetingRequest request) {
+    return query(attendees -> BusyIntervals.of(events, attendees).freeSlots(request.getDuration()),
+                 request);
+  }
+
+  /**
+  * Same as {@link #query(Collection, MeetingRequest)}, but looks up busy times in a prebuilt 
+  * calendar so that only the events of the requested attendees are touched.
+  */
+  public Collection<TimeRange> query(AttendeeCalendar calendar, MeetingRequest request) {
+    return query(attendees -> calendar.busyIntervals(attendees).freeSlots(request.getDuration()), 
+                 request);
+  }
+
+  /**
+  * Same as {@link #query(Collection, MeetingRequest)}, but searches {@code horizon} instead of a 
+  * single day, and also treats every occurrence of {@code recurringEvents} as busy. Occurrences 
+  * are generated while sweeping, so long horizons don't create an object per occurrence.
+  * 
+  * @param events          a collection of all one-off events that may be relevant
+  * @param recurringEvents a collection of all recurring events that may be relevant
+  * @param request         the meeting request
+  * @param horizon         the span of time, possibly many days long, to search for slots in
+  */
+  public Collection<TimeRange> query(Collection<Event> events, 
+                                     Collection<RecurringEvent> recurringEvents, 
+                                     MeetingRequest request, 
+                                     TimeRange horizon) {
+    return query(attendees -> BusyIntervals.of(events, attendees)
+                                           .freeSlots(horizon, 
+                                                      attending(recurringEvents, attendees), 
+                                                      request.getDuration()), 
+                 request);
+  }
+
+  /**
+  * Answer many meeting requests against the same events. The events are indexed by attendee once 
+  * and the requests are then answered in parallel on the common fork-join pool.
+  * 
+  * @param events   a collection of all events that may be relevant
+  * @param requests the meeting requests to answer
+  * @return         The possible slots for each request, in the same order as {@code requests}.
+  */
+  public List<Collection<TimeRange>> queryAll(Collection<Event> events, 
+                                              List<MeetingRequest> requests) {
+    return queryAll(new AttendeeCalendar(events), requests);
+  }
+
+  /**
+  * Same as {@link #queryAll(Collection, List)}, but looks up busy times in a prebuilt calendar.
+  */
+  public List<Collection<TimeRange>> queryAll(AttendeeCalendar calendar, 
+                                              List<MeetingRequest> requests) {
+    // Parallel streams run on the common fork-join pool and keep the encounter order of a list.
+    return requests.parallelStream()
+                   .map(request -> query(calendar, request))
+                   .collect(Collectors.toList());
+  }
+
+  /**
+  * Find slots that fit the mandatory attendees, ranked by how many optional attendees can also 
+  * make it. Unlike {@link #query(Collection, MeetingRequest)}, this never falls back to a second 
+  * pass: one sweep over the optional attendees' busy times scores the candidate slots.
+  *
+  * <p>Candidate slots start at the start of a mandatory-only gap or where an optional attendee 
+  * stops being busy, and stretch until the next optional attendee becomes busy. Every whole gap is 
+  * reported as well. This finds, for every set of optional attendees that can all make a meeting, 
+  * a slot that fits them. A longer slot that fits only part of that set, because it runs into the 
+  * busy time of the others, is not reported on its own.
+  *
+  * <p>A meeting fits an optional attendee unless it overlaps one of their events. A meeting from 
+  * s to e and an event from a to b overlap if {@code a < e && b > s}. So a meeting of duration 0 
+  * at time t only clashes with events that start before t and end after it, and an event of 
+  * duration 0 only clashes with meetings that start before it and end after it. This matches the 
+  * zero-length slots that {@link BusyIntervals#freeSlots} finds for mandatory attendees.
+  * 
+  * @param events  a collection of all events that may be relevant
+  * @param request the meeting request that specifies optional and mandatory guests for the event 
+  *                as well as the duration of the event
+  * @return        The possible slots, the ones that fit the most optional attendees first. If 
+  *                there are no mandatory attendees, slots that no optional attendee can make it 
+  *                to are left out.
+  */
+  public List<RankedTimeRange> queryRanked(Collection<Event> events, MeetingRequest request) {
+    return queryRanked(new AttendeeCalendar(events), request);
+  }
+
+  /**
+  * Same as {@link #queryRanked(Collection, MeetingRequest)}, but looks up busy times in a 
+  * prebuilt calendar.
+  */
+  public List<RankedTimeRange> queryRanked(AttendeeCalendar calendar, MeetingRequest request) {
+    long duration = request.getDuration();
+    List<TimeRange> gaps = calendar.busyIntervals(request.getAttendees()).freeSlots(duration);
+
+    // Flatten the busy times of the optional attendees, remembering who each interval belongs to.
+    List<BusyIntervals> optionalBusy = new ArrayList<>();
+    int total = 0;
+    for (String attendee : request.getOptionalAttendees()) {
+      BusyIntervals busy = calendar.busyIntervals(attendee);
+      optionalBusy.add(busy);
+      total += busy.size();
+    }
+
+    int[] owners = new int[total];
+    long[] byStart = new long[total];
+    long[] byEnd = new long[total];
+    int id = 0;
+    for (int owner = 0; owner < optionalBusy.size(); owner++) {
+      BusyIntervals busy = optionalBusy.get(owner);
+      for (int i = 0; i < busy.size(); i++, id++) {
+        owners[id] = owner;
+        byStart[id] = BusyIntervals.pack(busy.start(i), id);
+        byEnd[id] = BusyIntervals.pack(busy.end(i), id);
+      }
+    }
+    Arrays.sort(byStart);
+    Arrays.sort(byEnd);
+
+    // One window slides over every possible meeting start, the other covers each whole gap so that 
+    // the mandatory-only slot is scored in the same sweep.
+    BusyOwnerWindow meeting = new BusyOwnerWindow(owners, byStart, byEnd, optionalBusy.size());
+    BusyOwnerWindow wholeGap = new BusyOwnerWindow(owners, byStart, byEnd, optionalBusy.size());
+    boolean requireOptional = request.getAttendees().isEmpty();
+    int candidate = 0;
+    List<RankedTimeRange> ranked = new ArrayList<>();
+
+    for (TimeRange gap : gaps) {
+      long latestStart = gap.end() - duration;
+      int start = gap.start();
+      int lastEnd = -1;
+      int lastCount = -1;
+      boolean gapEmitted = false;
+
+      while (true) {
+        meeting.moveTo(start, start + duration);
+
+        // Nobody else becomes busy until the next interval starts, so the slot can stretch to it.
+        int end = (int) Math.min(gap.end(), meeting.nextStart());
+        int free = meeting.freeOwners();
+
+        // Skip slots that are inside the previous one and fit no more optional attendees. Starts 
+        // only move forward and ends never move back, so a slot is inside the previous one exactly 
+        // when it ends no later. A slot that is inside but fits more is kept, and so is the 
+        // previous one, which is longer.
+        boolean dominated = end <= lastEnd && free <= lastCount;
+        if (!dominated && !(requireOptional && free == 0)) {
+          ranked.add(new RankedTimeRange(TimeRange.fromStartEnd(start, end, false), free));
+          lastEnd = end;
+          lastCount = free;
+          gapEmitted |= start == gap.start() && end == gap.end();
+        }
+
+        // The next interesting start is the next time an optional attendee stops being busy.
+        while (candidate < total && time(byEnd[candidate]) <= start) {
+          candidate++;
+        }
+        if (candidate == total || time(byEnd[candidate]) > latestStart) {
+          break;
+        }
+        start = time(byEnd[candidate]);
+      }
+
+      wholeGap.moveTo(gap.start(), gap.end());
+      int free = wholeGap.freeOwners();
+      if (!gapEmitted && !(requireOptional && free == 0)) {
+        ranked.add(new RankedTimeRange(gap, free));
+      }
+    }
+
+    ranked.sort(RankedTimeRange.ORDER_BY_RANK);
+    return ranked;
+  }
+
+  /**
+  * Applies the optional attendee rules of {@link #query(Collection, MeetingRequest)} on top of 
+  * {@code freeSlots}, which finds the slots of the request's duration for a group of attendees.
+  */
+  Collection<TimeRange> query(Function<Collection<String>, List<TimeRange>> freeSlots, 
+                              MeetingRequest request) {
     if (!request.getOptionalAttendees().isEmpty()) {
       Collection<TimeRange> ranges = 
-          findAvailableTimeSlots(events, 
-                                 mergeCollections(request.getAttendees(), 
-                                                  request.getOptionalAttendees()), 
-                                 request.getDuration());
+          freeSlots.apply(mergeCollections(request.getAttendees(), request.getOptionalAttendees()));
 
       if (!ranges.isEmpty()) {
         return ranges;
@@ -54,27 +230,15 @@ public final class FindMeetingQuery {
       }
     }
 
-    return findAvailableTimeSlots(events, request.getAttendees(), request.getDuration());
+    return freeSlots.apply(request.getAttendees());
   }
 
-  private Collection<TimeRange> queryWithOptionalAttendeesAsMandatory(Collection<Event> events, 
-                                                                      MeetingRequest request) {
-    Collection<String> allAttendees = mergeCollections(request.getAttendees(), 
-                                                       request.getOptionalAttendees());
-
-    return findAvailableTimeSlots(events, allAttendees, request.getDuration());
-  }
-
-  private Collection<TimeRange> findAvailableTimeSlots(Collection<Event> events, 
-                                                       Collection<String> attendees, 
-                                                       long duration) {
-    
-    Stream<Event> relevantEvents = events.stream().filter(event -> hasAttendee(event, attendees));
-    Stream<TimeRange> eventTimes = relevantEvents.map(event -> event.getWhen());
-    
-    Collection<TimeRange> potentialSlots = filterTooShort(getInbetweenRanges(eventTimes), duration);
-
-    return potentialSlots;
+  /* Keep the recurring events that at least one of the attendees is attending */
+  private Collection<RecurringEvent> attending(Collection<RecurringEvent> recurringEvents, 
+                                               Collection<String> attendees) {
+    return recurringEvents.stream()
+                          .filter(event -> !Collections.disjoint(event.getAttendees(), attendees))
+                          .collect(Collectors.toList());
   }
 
   private Collection<String> mergeCollections(Collection<String> collectionA, 
@@ -83,73 +247,75 @@ public final class FindMeetingQuery {
                  .collect(Collectors.toList());
   }
 
-  /* Check if at least one of the attendees is attending the event */
-  private Boolean hasAttendee(Event event, Collection<String> attendees) {
-    return attendees.stream().anyMatch(event.getAttendees()::contains);
+  private static int time(long packed) {
+    return (int) (packed >> 32);
   }
 
-  /**
-   * Remove timeranges that are nested in other timeranges. A timerange A is nested in timerange B if 
-   * B starts earlier than A abd ends later than A. Like so:       
-   *                    |--A--|
-   *                  |----B----|
-   *
-   * Precondition: ranges is sorted by starting time.
-   */
-  private List<TimeRange> filterOutNestedTimeRanges(List<TimeRange> ranges) 
-                                            throws IllegalArgumentException {
-                                        
-    int i = 0;
-    while (i + 1 < ranges.size()) {
-      if (ranges.get(i).contains(ranges.get(i + 1))) {
-        ranges.remove(i + 1);
-      } else {
-        i++;
-      }
-    }
-
-    return ranges;
+  private static int index(long packed) {
+    return (int) packed;
   }
 
   /**
-   * Find ranges between consecutive ranges. 
-   * Input       |--A--|   |--B--|         |---C---|
-   * Return  |-1-|     |-2-|     |----3----|       |---4---|
-   * 
-   * Preconditions: - ranges is sorted by starting time 
+   * Counts the optional attendees who are busy at some point inside a window. An interval is inside
+   * the window once it starts before the window ends, and leaves once it ends at or before the 
+   * window starts. Windows only ever move forward, so every interval enters and leaves once.
+   *
+   * <p>An interval of duration 0 can end at the start of a window of duration 0 at the same time, 
+   * before it could enter. It then leaves without ever having been inside, as the overlap rule of 
+   * {@link FindMeetingQuery#queryRanked(AttendeeCalendar, MeetingRequest)} asks for.
    */
-  private Collection<TimeRange> getInbetweenRanges(Stream<TimeRange> ranges) 
-                                                  throws IllegalArgumentException {
-    List<TimeRange> rangeList = filterOutNestedTimeRanges(ranges.sorted(TimeRange.ORDER_BY_START)
-                                                                .collect(Collectors.toList()));                                              
-    if (rangeList.isEmpty()) {
-      return Arrays.asList(TimeRange.WHOLE_DAY);
-    } 
-
-    Collection<TimeRange> inbetweens = new ArrayList<TimeRange>();
-
-    // add range for time before first event starts
-    inbetweens.add(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, rangeList.get(0).start(), false));
+  private static final class BusyOwnerWindow {
+    private static final byte OUTSIDE = 0;
+    private static final byte INSIDE = 1;
+    private static final byte LEFT = 2;
 
+    private final int[] owners;
+    private final long[] byStart;
+    private final long[] byEnd;
+    private final int[] activeByOwner;
+    private final byte[] states;
+    private int busyOwners;
+    private int entered;
+    private int exited;
 
-    for (int i = 0; i < rangeList.size() - 1; i++) {
-      TimeRange a = rangeList.get(i);
-      TimeRange b = rangeList.get(i + 1);
-
-      inbetweens.add(TimeRange.fromStartEnd(a.end(), b.start(), false));  
+    BusyOwnerWindow(int[] owners, long[] byStart, long[] byEnd, int ownerCount) {
+      this.owners = owners;
+      this.byStart = byStart;
+      this.byEnd = byEnd;
+      this.activeByOwner = new int[ownerCount];
+      this.states = new byte[owners.length];
     }
 
-    // add range for time after last event ends
-    inbetweens.add(TimeRange.fromStartEnd(rangeList.get(rangeList.size() - 1).end(), 
-                                          TimeRange.END_OF_DAY, 
-                                          true));
+    void moveTo(long start, long end) {
+      while (entered < byStart.length && time(byStart[entered]) < end) {
+        int id = index(byStart[entered++]);
+        if (states[id] == OUTSIDE) {
+          states[id] = INSIDE;
+          if (activeByOwner[owners[id]]++ == 0) {
+            busyOwners++;
+          }
+        }
+      }
+      while (exited < byEnd.length && time(byEnd[exited]) <= start) {
+        int id = index(byEnd[exited++]);
+        if (states[id] == INSIDE && --activeByOwner[owners[id]] == 0) {
+          busyOwners--;
+        }
+        states[id] = LEFT;
+      }
+      // An interval that left without entering makes nobody busy, so it must not end a slot either.
+      while (entered < byStart.length && states[index(byStart[entered])] == LEFT) {
+        entered++;
+      }
+    }
 
-    return inbetweens;
-  }
+    /** Returns the start of the next interval to enter the window. */
+    long nextStart() {
+      return entered < byStart.length ? time(byStart[entered]) : Long.MAX_VALUE;
+    }
 
-  private Collection<TimeRange> filterTooShort(Collection<TimeRange> ranges, long minDuration) {
-    return ranges.stream()
-                 .filter(range -> range.duration() >= minDuration)
-                 .collect(Collectors.toList());
+    int freeOwners() {
+      return activeByOwner.length - busyOwners;
+    }
   }
 }
@@ -0,0 +1,208 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The free minutes of a single day, with one bit per minute. A set bit means the minute is free.
+ * Intersecting the free time of several people is one bitwise AND per word, so combining N
+ * attendees costs N passes over a fixed 23-word array no matter how many events they have.
+ */
+public final class MinuteBitmap {
+  private static final int MINUTES = TimeRange.WHOLE_DAY.duration();
+  private static final int WORDS = (MINUTES + 63) >>> 6;
+
+  // Minute m is stored in bit (m % 64) of words[m / 64]. Bits past the end of the day are always
+  // clear.
+  private final long[] words;
+
+  private MinuteBitmap(long[] words) {
+    this.words = words;
+  }
+
+  /**
+   * Returns a bitmap where every minute of the day is free.
+   */
+  public static MinuteBitmap allFree() {
+    MinuteBitmap bitmap = new MinuteBitmap(new long[WORDS]);
+    bitmap.setFree(TimeRange.START_OF_DAY, MINUTES);
+    return bitmap;
+  }
+
+  /**
+   * Returns a bitmap where only the minutes inside {@code ranges} are free.
+   */
+  public static MinuteBitmap fromFreeRanges(Collection<TimeRange> ranges) {
+    MinuteBitmap bitmap = new MinuteBitmap(new long[WORDS]);
+    for (TimeRange range : ranges) {
+      bitmap.setFree(range.start(), range.end());
+    }
+    return bitmap;
+  }
+
+  /**
+   * Returns a bitmap where every minute outside of {@code busy} is free.
+   */
+  public static MinuteBitmap fromBusy(BusyIntervals busy) {
+    MinuteBitmap bitmap = allFree();
+    for (int i = 0; i < busy.size(); i++) {
+      bitmap.setBusy(busy.start(i), busy.end(i));
+    }
+    return bitmap;
+  }
+
+  /**
+   * Returns an independent copy of this bitmap.
+   */
+  public MinuteBitmap copy() {
+    return new MinuteBitmap(words.clone());
+  }
+
+  /**
+   * Keeps only the minutes that are free in both this bitmap and {@code other}.
+   *
+   * @return this bitmap, so that several intersections can be chained
+   */
+  public MinuteBitmap and(MinuteBitmap other) {
+    for (int i = 0; i < WORDS; i++) {
+      words[i] &= other.words[i];
+    }
+    return this;
+  }
+
+  /**
+   * Marks the minutes from {@code start} (inclusive) to {@code end} (exclusive) as free. Minutes
+   * outside of the day are ignored.
+   */
+  public void setFree(int start, int end) {
+    update(start, end, true);
+  }
+
+  /**
+   * Marks the minutes from {@code start} (inclusive) to {@code end} (exclusive) as busy. Minutes
+   * outside of the day are ignored.
+   */
+  public void setBusy(int start, int end) {
+    update(start, end, false);
+  }
+
+  /**
+   * Checks if {@code minute} is free.
+   */
+  public boolean isFree(int minute) {
+    return minute >= 0 && minute < MINUTES && (words[minute >>> 6] & (1L << minute)) != 0;
+  }
+
+  /**
+   * Finds every run of free minutes that is at least {@code minDuration} minutes long. Unlike
+   * {@link BusyIntervals#freeSlots}, a bitmap cannot represent zero-length slots, so none are
+   * returned.
+   */
+  public List<TimeRange> freeRanges(long minDuration) {
+    List<TimeRange> ranges = new ArrayList<>();
+
+    int start = nextFree(TimeRange.START_OF_DAY);
+    while (start < MINUTES) {
+      int end = nextBusy(start);
+      if (end - start >= minDuration) {
+        ranges.add(TimeRange.fromStartEnd(start, end, false));
+      }
+      start = nextFree(end);
+    }
+
+    return ranges;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof MinuteBitmap && Arrays.equals(words, ((MinuteBitmap) other).words);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(words);
+  }
+
+  private void update(int start, int end, boolean free) {
+    start = Math.max(start, 0);
+    end = Math.min(end, MINUTES);
+    if (start >= end) {
+      return;
+    }
+
+    int firstWord = start >>> 6;
+    int lastWord = (end - 1) >>> 6;
+
+    // Shifts only use the low six bits of their right-hand side, which turns these into masks for
+    // the bits at or after start and the bits before end.
+    long firstMask = -1L << start;
+    long lastMask = -1L >>> -end;
+
+    for (int i = firstWord; i <= lastWord; i++) {
+      long mask = -1L;
+      if (i == firstWord) {
+        mask &= firstMask;
+      }
+      if (i == lastWord) {
+        mask &= lastMask;
+      }
+
+      if (free) {
+        words[i] |= mask;
+      } else {
+        words[i] &= ~mask;
+      }
+    }
+  }
+
+  /** Returns the first free minute at or after {@code from}, or the end of the day. */
+  private int nextFree(int from) {
+    if (from >= MINUTES) {
+      return MINUTES;
+    }
+
+    int i = from >>> 6;
+    long word = words[i] & (-1L << from);
+    while (word == 0) {
+      if (++i == WORDS) {
+        return MINUTES;
+      }
+      word = words[i];
+    }
+    return (i << 6) + Long.numberOfTrailingZeros(word);
+  }
+
+  /** Returns the first busy minute at or after {@code from}, or the end of the day. */
+  private int nextBusy(int from) {
+    if (from >= MINUTES) {
+      return MINUTES;
+    }
+
+    int i = from >>> 6;
+    long word = ~words[i] & (-1L << from);
+    while (word == 0) {
+      if (++i == WORDS) {
+        return MINUTES;
+      }
+      word = ~words[i];
+    }
+    // The unused bits after the end of the day read as busy, so clamp to the end of the day.
+    return Math.min((i << 6) + Long.numberOfTrailingZeros(word), MINUTES);
+  }
+}
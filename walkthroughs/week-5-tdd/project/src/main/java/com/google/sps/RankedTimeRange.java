@@ -0,0 +1,87 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Comparator;
+
+/**
+ * A possible meeting slot together with the number of optional attendees who are free for all of
+ * it. Ranked time ranges are considered read-only.
+ */
+public final class RankedTimeRange {
+  /**
+   * A comparator that puts the slots that fit the most optional attendees first. Slots that fit the
+   * same number of optional attendees are ordered by their start time.
+   */
+  public static final Comparator<RankedTimeRange> ORDER_BY_RANK =
+      new Comparator<RankedTimeRange>() {
+        @Override
+        public int compare(RankedTimeRange a, RankedTimeRange b) {
+          int byCount = Integer.compare(b.optionalAttendeeCount, a.optionalAttendeeCount);
+          return byCount != 0 ? byCount : TimeRange.ORDER_BY_START.compare(a.when, b.when);
+        }
+      };
+
+  private final TimeRange when;
+  private final int optionalAttendeeCount;
+
+  /**
+   * Creates a new ranked time range.
+   *
+   * @param when The slot that the meeting can be held in. Must be non-null.
+   * @param optionalAttendeeCount The number of optional attendees who are free for the whole slot.
+   */
+  public RankedTimeRange(TimeRange when, int optionalAttendeeCount) {
+    if (when == null) {
+      throw new IllegalArgumentException("when cannot be null");
+    }
+
+    this.when = when;
+    this.optionalAttendeeCount = optionalAttendeeCount;
+  }
+
+  /**
+   * Returns the {@code TimeRange} of this slot.
+   */
+  public TimeRange getWhen() {
+    return when;
+  }
+
+  /**
+   * Returns how many of the optional attendees can make it to a meeting held in this slot.
+   */
+  public int getOptionalAttendeeCount() {
+    return optionalAttendeeCount;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof RankedTimeRange && equals(this, (RankedTimeRange) other);
+  }
+
+  @Override
+  public int hashCode() {
+    return when.hashCode() ^ Integer.hashCode(optionalAttendeeCount);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s with %d optional attendees", when, optionalAttendeeCount);
+  }
+
+  private static boolean equals(RankedTimeRange a, RankedTimeRange b) {
+    return a.when.equals(b.when) && a.optionalAttendeeCount == b.optionalAttendeeCount;
+  }
+}
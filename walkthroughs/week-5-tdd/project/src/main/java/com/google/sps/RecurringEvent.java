@@ -0,0 +1,147 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An event that repeats at a fixed interval, such as a daily stand-up or a weekly 1-on-1. Only the
+ * rule is stored; occurrences are computed when they are needed. Recurring events are considered
+ * read-only.
+ */
+public final class RecurringEvent {
+  /** The number of minutes between occurrences of a daily event. */
+  public static final int DAILY = TimeRange.MINUTES_PER_DAY;
+
+  /** The number of minutes between occurrences of a weekly event. */
+  public static final int WEEKLY = 7 * DAILY;
+
+  /** Use as the number of occurrences for events that repeat forever. */
+  public static final int FOREVER = Integer.MAX_VALUE;
+
+  private final String title;
+  private final TimeRange first;
+  private final int period;
+  private final int occurrences;
+  private final Set<String> attendees = new HashSet<>();
+
+  /**
+   * Creates a new recurring event.
+   *
+   * @param title The human-readable name for the event. Must be non-null.
+   * @param first The time of the first occurrence. Must be non-null.
+   * @param period The number of minutes between the starts of two occurrences. Must be positive.
+   * @param occurrences How many times the event takes place, or {@link #FOREVER}. Must be positive.
+   * @param attendees The collection of people attending the event. Must be non-null.
+   */
+  public RecurringEvent(String title, TimeRange first, int period, int occurrences,
+      Collection<String> attendees) {
+    if (title == null) {
+      throw new IllegalArgumentException("title cannot be null");
+    }
+
+    if (first == null) {
+      throw new IllegalArgumentException("first cannot be null");
+    }
+
+    if (period <= 0) {
+      throw new IllegalArgumentException("period must be positive");
+    }
+
+    if (occurrences <= 0) {
+      throw new IllegalArgumentException("occurrences must be positive");
+    }
+
+    if (attendees == null) {
+      throw new IllegalArgumentException("attendees cannot be null. Use empty array instead.");
+    }
+
+    this.title = title;
+    this.first = first;
+    this.period = period;
+    this.occurrences = occurrences;
+    this.attendees.addAll(attendees);
+  }
+
+  /**
+   * Returns the human-readable name for this event.
+   */
+  public String getTitle() {
+    return title;
+  }
+
+  /**
+   * Returns the {@code TimeRange} of the first occurrence.
+   */
+  public TimeRange getFirst() {
+    return first;
+  }
+
+  /**
+   * Returns the number of minutes between the starts of two occurrences.
+   */
+  public int getPeriod() {
+    return period;
+  }
+
+  /**
+   * Returns how many times this event takes place.
+   */
+  public int getOccurrences() {
+    return occurrences;
+  }
+
+  /**
+   * Returns a read-only set of required attendees for this event.
+   */
+  public Set<String> getAttendees() {
+    return Collections.unmodifiableSet(attendees);
+  }
+
+  /**
+   * Returns the start of occurrence number {@code index}, counting from zero.
+   */
+  public long occurrenceStart(long index) {
+    return first.start() + index * period;
+  }
+
+  /**
+   * Returns the index of the first occurrence that is still going on at or after {@code time}. The
+   * result is {@link #getOccurrences()} if every occurrence has already ended by then.
+   */
+  public long firstOccurrenceEndingAfter(long time) {
+    // Occurrence k ends at first.end() + k * period, which must be greater than time.
+    long index = Math.max(0, Math.floorDiv(time - first.end(), (long) period) + 1);
+    return Math.min(index, occurrences);
+  }
+
+  @Override
+  public int hashCode() {
+    return title.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof RecurringEvent && equals(this, (RecurringEvent) other);
+  }
+
+  private static boolean equals(RecurringEvent a, RecurringEvent b) {
+    return a.title.equals(b.title) && a.first.equals(b.first) && a.period == b.period
+        && a.occurrences == b.occurrences && a.attendees.equals(b.attendees);
+  }
+}
@@ -21,10 +21,12 @@ import java.util.Comparator;
  * providing methods to make ranges easier to work with (e.g. {@code overlaps}).
  */
 public final class TimeRange {
+  public static final int MINUTES_PER_DAY = 24 * 60;
+
   public static final int START_OF_DAY = getTimeInMinutes(0, 0);
   public static final int END_OF_DAY = getTimeInMinutes(23, 59);
 
-  public static final TimeRange WHOLE_DAY = new TimeRange(0, 24 * 60);
+  public static final TimeRange WHOLE_DAY = new TimeRange(0, MINUTES_PER_DAY);
 
   /**
    * A comparator for sorting ranges by their start time in ascending order.
@@ -168,6 +170,27 @@ public final class TimeRange {
     return (hours * 60) + minutes;
   }
 
+  /**
+   * Returns the time in minutes of {@code hours}:{@code minutes} on day number {@code day}, where
+   * day 0 is the day that {@link #WHOLE_DAY} covers. Use this to build ranges that span several
+   * days.
+   */
+  public static int getTimeInMinutes(int day, int hours, int minutes) {
+    if (day < 0) {
+      throw new IllegalArgumentException("Days must not be negative.");
+    }
+
+    return (day * MINUTES_PER_DAY) + getTimeInMinutes(hours, minutes);
+  }
+
+  /**
+   * Creates a {@code TimeRange} covering {@code count} whole days, starting at day number
+   * {@code firstDay}.
+   */
+  public static TimeRange fromDays(int firstDay, int count) {
+    return new TimeRange(getTimeInMinutes(firstDay, 0, 0), count * MINUTES_PER_DAY);
+  }
+
   /**
    * Creates a {@code TimeRange} from {@code start} to {@code end}. Whether or not {@code end} is
    * included in the range will depend on {@code inclusive}. If {@code inclusive} is {@code true},
@@ -0,0 +1,60 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.AttendeeCalendar;
+import com.google.sps.Events;
+import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the calendar that the query servlets answer requests against, together with its events as
+ * served by {@code /get-events}. It starts out with the sample events and is replaced whenever a
+ * new feed is ingested. The calendar and its events are always replaced together.
+ */
+final class CalendarHolder {
+  /** A calendar and the encoded events it was built from. */
+  private static final class Entry {
+    final AttendeeCalendar calendar;
+    final EncodedJson events;
+
+    Entry(AttendeeCalendar calendar, EncodedJson events) {
+      this.calendar = calendar;
+      this.events = events;
+    }
+  }
+
+  private static final AtomicReference<Entry> current = new AtomicReference<>(new Entry(
+      new AttendeeCalendar(Arrays.asList(Events.events)),
+      EncodedJson.of(new Gson().toJson(Events.events).getBytes(StandardCharsets.UTF_8))));
+
+  private CalendarHolder() {
+    // Disallow instances.
+  }
+
+  static AttendeeCalendar get() {
+    return current.get().calendar;
+  }
+
+  static EncodedJson events() {
+    return current.get().events;
+  }
+
+  static void set(AttendeeCalendar newCalendar, EncodedJson newEvents) {
+    current.set(new Entry(newCalendar, newEvents));
+  }
+}
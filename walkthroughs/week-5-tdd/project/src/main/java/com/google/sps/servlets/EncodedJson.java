@@ -0,0 +1,223 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A JSON document that has been encoded to UTF-8 and compressed ahead of time, so serving it just
+ * copies the right bytes to the response. Only the compressed bytes are kept. The few clients that
+ * do not accept gzip get them decompressed as they are sent. Encoded documents are considered
+ * read-only.
+ */
+final class EncodedJson {
+  private final byte[] gzippedJson;
+  private final long length;
+  private final String etag;
+  private final String gzipEtag;
+
+  private EncodedJson(byte[] gzippedJson, long length, String hash) {
+    this.gzippedJson = gzippedJson;
+    this.length = length;
+
+    // The compressed bytes are a different representation, so they get their own strong tag.
+    this.etag = "\"" + hash + "\"";
+    this.gzipEtag = "\"" + hash + "-gzip\"";
+  }
+
+  /** Encodes a UTF-8 document that is already in memory. */
+  static EncodedJson of(byte[] json) {
+    Encoder encoder = new Encoder();
+    try {
+      encoder.stream().write(json);
+      return encoder.finish();
+    } catch (IOException e) {
+      // Writing to memory does not fail.
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Builds an EncodedJson from a document written to {@link #stream} a piece at a time. Each byte
+   * is hashed and compressed as it is written, so the uncompressed document is never held whole.
+   */
+  static final class Encoder {
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private final MessageDigest digest = sha256();
+    private final GZIPOutputStream gzip;
+    private final OutputStream stream;
+    private long length = 0;
+
+    Encoder() {
+      try {
+        gzip = new GZIPOutputStream(compressed);
+      } catch (IOException e) {
+        // Writing to memory does not fail.
+        throw new UncheckedIOException(e);
+      }
+      stream = new FilterOutputStream(new DigestOutputStream(gzip, digest)) {
+        @Override
+        public void write(int b) throws IOException {
+          out.write(b);
+          length++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+          out.write(bytes, offset, count);
+          length += count;
+        }
+
+        @Override
+        public void close() {
+          // Closing whatever wraps the stream must not end the document; finish() does that.
+        }
+      };
+    }
+
+    /** The stream to write the UTF-8 document to. Closing it does nothing. */
+    OutputStream stream() {
+      return stream;
+    }
+
+    /** Ends the document. Nothing may be written to the stream afterwards. */
+    EncodedJson finish() throws IOException {
+      stream.flush();
+      gzip.finish();
+      return new EncodedJson(compressed.toByteArray(), length, hex(digest.digest()));
+    }
+  }
+
+  /**
+   * Sends the document, compressed if the client accepts gzip. A request that already holds the
+   * current version gets a 304 without a body.
+   */
+  void write(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    boolean useGzip = acceptsGzip(request.getHeader("Accept-Encoding"));
+    String tag = useGzip ? gzipEtag : etag;
+
+    response.setHeader("ETag", tag);
+    response.setHeader("Vary", "Accept-Encoding");
+
+    if (matches(request.getHeader("If-None-Match"), tag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    response.setContentType("application/json;charset=UTF-8");
+    ServletOutputStream out = response.getOutputStream();
+    if (useGzip) {
+      response.setHeader("Content-Encoding", "gzip");
+      response.setContentLength(gzippedJson.length);
+      out.write(gzippedJson);
+      return;
+    }
+
+    response.setContentLengthLong(length);
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzippedJson))) {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    }
+  }
+
+  /**
+   * Returns true if the Accept-Encoding header allows gzip. An explicit gzip entry decides on its
+   * own; otherwise a * entry does. Either one turns gzip off with q=0.
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+
+    Boolean wildcard = null;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      String name = parts[0].trim();
+      boolean isGzip = name.equalsIgnoreCase("gzip");
+      if (!isGzip && !name.equals("*")) {
+        continue;
+      }
+
+      boolean refused = false;
+      for (int i = 1; i < parts.length; i++) {
+        String param = parts[i].trim();
+        if (param.matches("[qQ]\\s*=\\s*0(\\.0{0,3})?")) {
+          refused = true;
+        }
+      }
+
+      if (isGzip) {
+        return !refused;
+      }
+      wildcard = !refused;
+    }
+    return wildcard != null && wildcard;
+  }
+
+  /**
+   * Returns true if the If-None-Match header is * or lists {@code tag}. Weak tags are compared by
+   * their opaque part, as the spec asks for with If-None-Match.
+   */
+  private static boolean matches(String ifNoneMatch, String tag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if (candidate.equals("*") || candidate.equals(tag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+}
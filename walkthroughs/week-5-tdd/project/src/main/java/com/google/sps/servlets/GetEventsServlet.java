@@ -14,23 +14,21 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.Events;
-import com.google.gson.Gson;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+/**
+ * Serves the events of the calendar that the query servlets use: the sample events, or the last
+ * feed that was ingested. The JSON is encoded and compressed once when the calendar is set, so a
+ * request that accepts gzip just copies the compressed bytes to the response.
+ */
 @WebServlet("/get-events")
 public class GetEventsServlet extends HttpServlet {
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    Gson gson = new Gson();
-    String jsonResponse = gson.toJson(Events.events);
-
-    // Send the JSON back as the response
-    response.setContentType("application/json");
-    response.getWriter().println(jsonResponse);
+    CalendarHolder.events().write(request, response);
   }
 }
@@ -0,0 +1,163 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.AttendeeCalendar;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Replaces the calendar used by the query servlets with a feed of events. The feed is a JSON array
+ * of events in the same shape that {@code /get-events} returns. It is read one token at a time and
+ * each event goes straight into the calendar being built, so the feed is never held as objects.
+ * The events are also re-encoded as they are read, straight into a compressed and hashed
+ * EncodedJson, so that {@code /get-events} serves the new events from then on without the
+ * uncompressed feed ever being held in memory.
+ *
+ * Only admins may replace the calendar. This is enforced by a security constraint in web.xml.
+ */
+@WebServlet("/ingest-events")
+public class IngestEventsServlet extends HttpServlet {
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    AttendeeCalendar.Builder builder = new AttendeeCalendar.Builder();
+    EncodedJson.Encoder events = new EncodedJson.Encoder();
+    int eventCount = 0;
+
+    try (JsonReader reader = new JsonReader(request.getReader());
+        JsonWriter writer =
+            new JsonWriter(new OutputStreamWriter(events.stream(), StandardCharsets.UTF_8))) {
+      // Reused for every event so that reading the feed doesn't allocate per event.
+      EventFields event = new EventFields();
+
+      reader.beginArray();
+      writer.beginArray();
+      while (reader.hasNext()) {
+        readEvent(reader, event);
+        builder.add(event.attendees, event.start, event.start + event.duration);
+        writeEvent(writer, event);
+        eventCount++;
+      }
+      reader.endArray();
+      writer.endArray();
+    } catch (IllegalStateException | JsonParseException | IllegalArgumentException
+        | MalformedJsonException | EOFException e) {
+      // Gson reports unexpected tokens as IllegalStateException, bad syntax as
+      // MalformedJsonException and a feed that stops early as EOFException. Other IOExceptions,
+      // such as the client going away, are not the feed's fault and are left to the container.
+      response.sendError(
+          HttpServletResponse.SC_BAD_REQUEST, "Invalid event feed: " + e.getMessage());
+      return;
+    }
+
+    AttendeeCalendar calendar = builder.build();
+    CalendarHolder.set(calendar, events.finish());
+
+    JsonObject summary = new JsonObject();
+    summary.addProperty("events", eventCount);
+    summary.addProperty("attendees", calendar.getAttendees().size());
+
+    // Send the JSON back as the response
+    response.setContentType("application/json");
+    response.getWriter().println(summary);
+  }
+
+  /** The fields of one event, as read from the feed. */
+  private static final class EventFields {
+    String title;
+    int start;
+    int duration;
+    final List<String> attendees = new ArrayList<>();
+  }
+
+  /** Reads one event object into {@code event}, replacing what it held before. */
+  private static void readEvent(JsonReader reader, EventFields event) throws IOException {
+    event.title = "";
+    event.start = -1;
+    event.duration = -1;
+    event.attendees.clear();
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "title":
+          event.title = reader.nextString();
+          break;
+        case "when":
+          reader.beginObject();
+          while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("start")) {
+              event.start = reader.nextInt();
+            } else if (name.equals("duration")) {
+              event.duration = reader.nextInt();
+            } else {
+              reader.skipValue();
+            }
+          }
+          reader.endObject();
+          break;
+        case "attendees":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            // An event's attendees are a set, as in Event.
+            String attendee = reader.nextString();
+            if (!event.attendees.contains(attendee)) {
+              event.attendees.add(attendee);
+            }
+          }
+          reader.endArray();
+          break;
+        default:
+          // Nothing else is part of an event.
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    if (event.start < 0 || event.duration < 0) {
+      throw new JsonParseException("Every event needs a start and a duration.");
+    }
+  }
+
+  /** Writes an event in the shape Gson gives {@link com.google.sps.Event}. */
+  private static void writeEvent(JsonWriter writer, EventFields event) throws IOException {
+    writer.beginObject();
+    writer.name("title").value(event.title);
+    writer.name("when").beginObject()
+        .name("start").value(event.start)
+        .name("duration").value(event.duration)
+        .endObject();
+    writer.name("attendees").beginArray();
+    for (String attendee : event.attendees) {
+      writer.value(attendee);
+    }
+    writer.endArray();
+    writer.endObject();
+  }
+}
@@ -0,0 +1,97 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class AttendeeCalendarTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+  private static final int DURATION_60_MINUTES = 60;
+
+  @Test
+  public void indexesEveryAttendeeOfAnEvent() {
+    AttendeeCalendar calendar = new AttendeeCalendar(Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_A, PERSON_B)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0830AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_A))));
+
+    BusyIntervals busyA = calendar.busyIntervals(PERSON_A);
+    Assert.assertEquals(1, busyA.size());
+    Assert.assertEquals(TIME_0800AM, busyA.start(0));
+    Assert.assertEquals(TIME_0800AM + 90, busyA.end(0));
+
+    BusyIntervals busyB = calendar.busyIntervals(PERSON_B);
+    Assert.assertEquals(1, busyB.size());
+    Assert.assertEquals(TIME_0900AM, busyB.end(0));
+
+    Assert.assertEquals(0, calendar.busyIntervals(PERSON_C).size());
+  }
+
+  @Test
+  public void builderMatchesConstructor() {
+    Event event = new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_0900AM, DURATION_60_MINUTES),
+        Arrays.asList(PERSON_A, PERSON_B));
+
+    AttendeeCalendar built = new AttendeeCalendar.Builder()
+        .add(event.getAttendees(), TIME_0900AM, TIME_1000AM)
+        .build();
+    AttendeeCalendar constructed = new AttendeeCalendar(Arrays.asList(event));
+
+    Assert.assertEquals(constructed.getAttendees(), built.getAttendees());
+    Assert.assertEquals(constructed.busyIntervals(Arrays.asList(PERSON_A, PERSON_B)).freeSlots(0),
+        built.busyIntervals(Arrays.asList(PERSON_A, PERSON_B)).freeSlots(0));
+  }
+
+  @Test
+  public void queryMatchesEventScan() {
+    // Every pair of people in the sample calendar, with and without an optional third person,
+    // should get the same answer from the index as from scanning all events.
+    Collection<Event> events = Arrays.asList(Events.events);
+    AttendeeCalendar calendar = new AttendeeCalendar(events);
+    FindMeetingQuery query = new FindMeetingQuery();
+
+    List<String> people = new ArrayList<>(calendar.getAttendees());
+    for (int i = 0; i < people.size(); i++) {
+      for (int j = i + 1; j < people.size(); j++) {
+        MeetingRequest request =
+            new MeetingRequest(Arrays.asList(people.get(i), people.get(j)), DURATION_30_MINUTES);
+        Assert.assertEquals(query.query(events, request), query.query(calendar, request));
+
+        request.addOptionalAttendee(people.get((j + 1) % people.size()));
+        Assert.assertEquals(query.query(events, request), query.query(calendar, request));
+      }
+    }
+  }
+}
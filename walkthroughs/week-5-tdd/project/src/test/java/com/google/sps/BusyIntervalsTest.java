@@ -0,0 +1,142 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class BusyIntervalsTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_0930AM = TimeRange.getTimeInMinutes(9, 30);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+  private static final int DURATION_60_MINUTES = 60;
+
+  @Test
+  public void noEventsLeavesWholeDayFree() {
+    BusyIntervals busy = BusyIntervals.of(Collections.emptyList(), Arrays.asList(PERSON_A));
+
+    Assert.assertEquals(0, busy.size());
+    Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY), busy.freeSlots(DURATION_30_MINUTES));
+  }
+
+  @Test
+  public void overlappingEventsAreMerged() {
+    // Events  :       |--A--|
+    //                     |--B--|
+    //                       |A|
+    // Merged  :       |-------|
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0830AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)));
+
+    BusyIntervals busy = BusyIntervals.of(events, Arrays.asList(PERSON_A, PERSON_B));
+
+    Assert.assertEquals(1, busy.size());
+    Assert.assertEquals(TIME_0830AM, busy.start(0));
+    Assert.assertEquals(TIME_1000AM, busy.end(0));
+  }
+
+  @Test
+  public void ignoresOtherAttendees() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_B)));
+
+    List<TimeRange> actual =
+        BusyIntervals.of(events, Arrays.asList(PERSON_B)).freeSlots(DURATION_30_MINUTES);
+    List<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0900AM, false),
+            TimeRange.fromStartEnd(TIME_0930AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void unionMatchesCombinedAttendees() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0830AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_B)));
+
+    BusyIntervals union = BusyIntervals.union(Arrays.asList(
+        BusyIntervals.of(events, Arrays.asList(PERSON_A)),
+        BusyIntervals.of(events, Arrays.asList(PERSON_B))));
+
+    Assert.assertEquals(
+        BusyIntervals.of(events, Arrays.asList(PERSON_A, PERSON_B)).freeSlots(DURATION_30_MINUTES),
+        union.freeSlots(DURATION_30_MINUTES));
+  }
+
+  @Test
+  public void matchesMinuteByMinuteScan() {
+    Random random = new Random(42);
+
+    for (int round = 0; round < 200; round++) {
+      List<Event> events = new ArrayList<>();
+      boolean[] busyMinutes = new boolean[TimeRange.WHOLE_DAY.duration()];
+
+      int eventCount = random.nextInt(30);
+      for (int i = 0; i < eventCount; i++) {
+        int start = random.nextInt(TimeRange.WHOLE_DAY.duration());
+        int duration = 1 + random.nextInt(Math.min(120, TimeRange.WHOLE_DAY.duration() - start));
+        events.add(new Event("Event " + i, TimeRange.fromStartDuration(start, duration),
+            Arrays.asList(PERSON_A)));
+        Arrays.fill(busyMinutes, start, start + duration, true);
+      }
+
+      int minDuration = 1 + random.nextInt(DURATION_60_MINUTES);
+      List<TimeRange> expected = new ArrayList<>();
+      int freeFrom = -1;
+      for (int minute = 0; minute <= busyMinutes.length; minute++) {
+        boolean busy = minute == busyMinutes.length || busyMinutes[minute];
+        if (busy && freeFrom >= 0) {
+          if (minute - freeFrom >= minDuration) {
+            expected.add(TimeRange.fromStartEnd(freeFrom, minute, false));
+          }
+          freeFrom = -1;
+        } else if (!busy && freeFrom < 0) {
+          freeFrom = minute;
+        }
+      }
+
+      Assert.assertEquals(
+          expected, BusyIntervals.of(events, Arrays.asList(PERSON_A)).freeSlots(minDuration));
+    }
+  }
+}
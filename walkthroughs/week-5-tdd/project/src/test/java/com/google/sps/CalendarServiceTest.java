@@ -0,0 +1,137 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class CalendarServiceTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_0930AM = TimeRange.getTimeInMinutes(9, 30);
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  private static final Event EVENT_A = new Event("Event 1",
+      TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES), Arrays.asList(PERSON_A));
+  private static final Event EVENT_B = new Event("Event 2",
+      TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES), Arrays.asList(PERSON_B));
+
+  private CalendarService service;
+
+  @Before
+  public void setUp() {
+    service = new CalendarService(16);
+    service.add(EVENT_A);
+    service.add(EVENT_B);
+  }
+
+  @Test
+  public void queryMatchesFindMeetingQuery() {
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_C);
+
+    Collection<TimeRange> expected =
+        new FindMeetingQuery().query(Arrays.asList(EVENT_A, EVENT_B), request);
+
+    Assert.assertEquals(expected, service.query(request));
+    // The second time around the answer comes from the cache.
+    Assert.assertEquals(expected, service.query(request));
+  }
+
+  @Test
+  public void moveChangesTheAnswer() {
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    service.query(request);
+
+    Event moved =
+        service.move(EVENT_A, TimeRange.fromStartDuration(TIME_0830AM, DURATION_30_MINUTES));
+
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0830AM, false),
+            TimeRange.fromStartEnd(TIME_0900AM, TimeRange.END_OF_DAY, true));
+    Assert.assertEquals(expected, service.query(request));
+    Assert.assertFalse(service.remove(EVENT_A));
+    Assert.assertTrue(service.remove(moved));
+  }
+
+  @Test
+  public void changesOnlyInvalidateAffectedAttendees() {
+    service.query(new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES));
+    service.query(new MeetingRequest(Arrays.asList(PERSON_B), DURATION_30_MINUTES));
+    service.query(new MeetingRequest(Arrays.asList(PERSON_A, PERSON_C), DURATION_30_MINUTES));
+    Assert.assertEquals(3, service.cachedResultCount());
+
+    service.remove(EVENT_A);
+
+    // Only the result for Person B alone survives.
+    Assert.assertEquals(1, service.cachedResultCount());
+  }
+
+  @Test
+  public void cacheIsBounded() {
+    CalendarService small = new CalendarService(2);
+    for (int duration = 1; duration <= 5; duration++) {
+      small.query(new MeetingRequest(Arrays.asList(PERSON_A), duration));
+    }
+
+    Assert.assertEquals(2, small.cachedResultCount());
+  }
+
+  @Test
+  public void randomChangesMatchFindMeetingQuery() {
+    // Keep a plain list of events next to the service and check that they always agree.
+    Random random = new Random(7);
+    List<Event> events = new ArrayList<>();
+    List<String> people = Arrays.asList(PERSON_A, PERSON_B, PERSON_C);
+    CalendarService fresh = new CalendarService(4);
+    FindMeetingQuery query = new FindMeetingQuery();
+
+    for (int step = 0; step < 300; step++) {
+      if (events.isEmpty() || random.nextBoolean()) {
+        Event event = new Event("Event " + step,
+            TimeRange.fromStartDuration(random.nextInt(1400), 1 + random.nextInt(40)),
+            Arrays.asList(people.get(random.nextInt(3)), people.get(random.nextInt(3))));
+        events.add(event);
+        fresh.add(event);
+      } else {
+        Event event = events.remove(random.nextInt(events.size()));
+        Event moved = fresh.move(event, TimeRange.fromStartDuration(random.nextInt(1400), 10));
+        events.add(moved);
+      }
+
+      MeetingRequest request = new MeetingRequest(
+          Arrays.asList(people.get(random.nextInt(3))), 1 + random.nextInt(DURATION_30_MINUTES));
+      request.addOptionalAttendee(people.get(random.nextInt(3)));
+      Assert.assertEquals(query.query(events, request), fresh.query(request));
+    }
+  }
+}
@@ -407,4 +407,244 @@ public final class FindMeetingQueryTest {
 
     Assert.assertEquals(expected, actual);
   }
+
+  @Test
+  public void rankedPutsSlotsWithOptionalAttendeesFirst() {
+    // Events  :       |--A--|     |--B--|
+    // Optional:             |--C--|
+    // Day     : |-----------------------------|
+    // Options : |--1--|     |--2--|     |--3--|
+    // Ranked  : 1 and 3 fit C, 2 does not.
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartDuration(TIME_0830AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_C)));
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_C);
+
+    List<RankedTimeRange> actual = query.queryRanked(events, request);
+    List<RankedTimeRange> expected = Arrays.asList(
+        new RankedTimeRange(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false), 1),
+        new RankedTimeRange(TimeRange.fromStartEnd(TIME_0930AM, TimeRange.END_OF_DAY, true), 1),
+        new RankedTimeRange(TimeRange.fromStartEnd(TIME_0830AM, TIME_0900AM, false), 0));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void rankedFindsSlotsForSomeOptionalAttendees() {
+    // The meeting is long enough that a slot fitting only B exists, as well as the whole day,
+    // which is the answer when optional attendees are ignored.
+    //
+    // Optional:       |--B--|
+    //                       |--C--|
+    // Day     : |---------------------------|
+    // Options : |--1--|           |----2----|  both B and C
+    //                       |--------3------|  only B
+    //           |-------------4-------------|  neither
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false),
+            Arrays.asList(PERSON_C)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_2_HOUR);
+    request.addOptionalAttendee(PERSON_B);
+    request.addOptionalAttendee(PERSON_C);
+
+    List<RankedTimeRange> actual = query.queryRanked(events, request);
+    List<RankedTimeRange> expected = Arrays.asList(
+        new RankedTimeRange(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false), 2),
+        new RankedTimeRange(TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, true), 2),
+        new RankedTimeRange(TimeRange.fromStartEnd(TIME_0900AM, TimeRange.END_OF_DAY, true), 1),
+        new RankedTimeRange(TimeRange.WHOLE_DAY, 0));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void rankedWithoutMandatoryAttendeesSkipsEmptyMeetings() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, true),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_0800AM, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_B)));
+
+    MeetingRequest request = new MeetingRequest(NO_ATTENDEES, DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_A);
+    request.addOptionalAttendee(PERSON_B);
+
+    List<RankedTimeRange> actual = query.queryRanked(events, request);
+    List<RankedTimeRange> expected = Arrays.asList(
+        new RankedTimeRange(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false), 1),
+        new RankedTimeRange(
+            TimeRange.fromStartEnd(TIME_0800AM + 1, TimeRange.END_OF_DAY, true), 1));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void rankedBackToBackOptionalEvents() {
+    // A later slot that ends with the previous one but fits more optional attendees is kept, and
+    // so is the previous, longer one.
+    //
+    // Optional:       |--B--|
+    //                       |--C--|
+    // Day     : |---------------------------|
+    // Options : |--1--|           |----2----|  both B and C
+    //                       |--------3------|  only B
+    //           |-------------4-------------|  neither
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_1000AM, TIME_1100AM, false),
+            Arrays.asList(PERSON_C)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_B);
+    request.addOptionalAttendee(PERSON_C);
+
+    List<RankedTimeRange> actual = query.queryRanked(events, request);
+    List<RankedTimeRange> expected = Arrays.asList(
+        new RankedTimeRange(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0900AM, false), 2),
+        new RankedTimeRange(TimeRange.fromStartEnd(TIME_1100AM, TimeRange.END_OF_DAY, true), 2),
+        new RankedTimeRange(TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, true), 1),
+        new RankedTimeRange(TimeRange.WHOLE_DAY, 0));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void rankedZeroDurationMeeting() {
+    // A meeting of duration 0 only clashes with events that start before it and end after it, and
+    // C's event of duration 0 only clashes with meetings that start before it and end after it.
+    // So a meeting at 10:00 fits both B and C, and so does every meeting up to 10:30.
+    //
+    // Optional:       |--B--|
+    //                       C  |--C--|
+    // Day     : |-------------------------------|
+    // Options : |--1--|     |-2|     |-----3----|  both B and C
+    //           |---------------4---------------|  neither
+
+    int time1030AM = TimeRange.getTimeInMinutes(10, 30);
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_1000AM, 0),
+            Arrays.asList(PERSON_C)),
+        new Event("Event 3", TimeRange.fromStartEnd(time1030AM, TIME_1100AM, false),
+            Arrays.asList(PERSON_C)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), 0);
+    request.addOptionalAttendee(PERSON_B);
+    request.addOptionalAttendee(PERSON_C);
+
+    List<RankedTimeRange> actual = query.queryRanked(events, request);
+    List<RankedTimeRange> expected = Arrays.asList(
+        new RankedTimeRange(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0900AM, false), 2),
+        new RankedTimeRange(TimeRange.fromStartEnd(TIME_1000AM, time1030AM, false), 2),
+        new RankedTimeRange(TimeRange.fromStartEnd(TIME_1100AM, TimeRange.END_OF_DAY, true), 2),
+        new RankedTimeRange(TimeRange.WHOLE_DAY, 0));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void rankedTopSlotsMatchQuery() {
+    // The best ranked slots are exactly what the regular query returns when every optional
+    // attendee is made mandatory, and there are none when no slot fits all of them.
+    AttendeeCalendar calendar = new AttendeeCalendar(Arrays.asList(Events.events));
+    List<String> people = new ArrayList<>(calendar.getAttendees());
+    int requestsWithBestSlots = 0;
+
+    for (int i = 0; i < people.size(); i++) {
+      for (int j = 0; j < people.size(); j++) {
+        MeetingRequest request =
+            new MeetingRequest(Arrays.asList(people.get(i)), DURATION_30_MINUTES);
+        request.addOptionalAttendee(people.get(j));
+        request.addOptionalAttendee(people.get((j + 1) % people.size()));
+        int optionalCount = request.getOptionalAttendees().size();
+
+        List<String> everyone = new ArrayList<>(request.getAttendees());
+        everyone.addAll(request.getOptionalAttendees());
+        Collection<TimeRange> expected =
+            query.query(calendar, new MeetingRequest(everyone, DURATION_30_MINUTES));
+
+        List<RankedTimeRange> ranked = query.queryRanked(calendar, request);
+        Assert.assertFalse(ranked.isEmpty());
+
+        List<TimeRange> best = new ArrayList<>();
+        for (RankedTimeRange slot : ranked) {
+          if (slot.getOptionalAttendeeCount() == optionalCount) {
+            best.add(slot.getWhen());
+          }
+        }
+        Collections.sort(best, TimeRange.ORDER_BY_START);
+
+        Assert.assertEquals(expected, best);
+        if (!best.isEmpty()) {
+          requestsWithBestSlots++;
+        }
+      }
+    }
+
+    // Make sure the comparison above was not only ever between empty lists.
+    Assert.assertTrue(requestsWithBestSlots > 0);
+  }
+
+  @Test
+  public void queryAllAnswersEachRequestInOrder() {
+    Collection<Event> events = Arrays.asList(Events.events);
+    AttendeeCalendar calendar = new AttendeeCalendar(events);
+
+    List<MeetingRequest> requests = new ArrayList<>();
+    for (String person : calendar.getAttendees()) {
+      requests.add(new MeetingRequest(Arrays.asList(person), DURATION_30_MINUTES));
+      requests.add(new MeetingRequest(Arrays.asList(person, PERSON_A), DURATION_2_HOUR));
+    }
+
+    List<Collection<TimeRange>> actual = query.queryAll(events, requests);
+
+    Assert.assertEquals(requests.size(), actual.size());
+    for (int i = 0; i < requests.size(); i++) {
+      Assert.assertEquals(query.query(events, requests.get(i)), actual.get(i));
+    }
+  }
+
+  @Test
+  public void recurringEventsAcrossSeveralDays() {
+    // Person A has a daily event from 8:00 to 9:00 and a one-off event on the second morning.
+    // Over two days there should be three options.
+    //
+    // Events  :         |-A-|                  |-A-||--A--|
+    // Days    : |----------day 0-------||----------day 1-------|
+    // Options : |---1---|   |------2-----------|          |-3--|
+
+    int day1Morning = TimeRange.getTimeInMinutes(1, 9, 0);
+    Collection<Event> events = Arrays.asList(new Event("Event 1",
+        TimeRange.fromStartDuration(day1Morning, DURATION_2_HOUR), Arrays.asList(PERSON_A)));
+    Collection<RecurringEvent> recurringEvents = Arrays.asList(new RecurringEvent("Daily",
+        TimeRange.fromStartDuration(TIME_0800AM, DURATION_1_HOUR), RecurringEvent.DAILY,
+        RecurringEvent.FOREVER, Arrays.asList(PERSON_A)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_1_HOUR);
+
+    Collection<TimeRange> actual =
+        query.query(events, recurringEvents, request, TimeRange.fromDays(0, 2));
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            TimeRange.fromStartEnd(TIME_0900AM, TimeRange.getTimeInMinutes(1, 8, 0), false),
+            TimeRange.fromStartEnd(day1Morning + DURATION_2_HOUR, 2 * TimeRange.MINUTES_PER_DAY,
+                false));
+
+    Assert.assertEquals(expected, actual);
+  }
 }
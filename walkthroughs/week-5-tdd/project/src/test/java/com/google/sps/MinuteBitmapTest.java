@@ -0,0 +1,90 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class MinuteBitmapTest {
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_0930AM = TimeRange.getTimeInMinutes(9, 30);
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  @Test
+  public void allFreeIsWholeDay() {
+    Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY), MinuteBitmap.allFree().freeRanges(1));
+  }
+
+  @Test
+  public void roundTripsTimeRanges() {
+    // Include ranges that start and end on word boundaries as well as the end of the day.
+    List<TimeRange> ranges = Arrays.asList(TimeRange.fromStartEnd(0, 64, false),
+        TimeRange.fromStartEnd(127, 129, false),
+        TimeRange.fromStartEnd(TIME_0800AM, TIME_0830AM, false),
+        TimeRange.fromStartEnd(TIME_0930AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(ranges, MinuteBitmap.fromFreeRanges(ranges).freeRanges(1));
+  }
+
+  @Test
+  public void andIntersectsFreeTime() {
+    // Free A  : |-----|
+    // Free B  :    |-----|
+    // Both    :    |--|
+    MinuteBitmap a = MinuteBitmap.fromFreeRanges(
+        Arrays.asList(TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false)));
+    MinuteBitmap b = MinuteBitmap.fromFreeRanges(
+        Arrays.asList(TimeRange.fromStartEnd(TIME_0830AM, TIME_0930AM, false)));
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(TIME_0830AM, TIME_0900AM, false)),
+        a.and(b).freeRanges(DURATION_30_MINUTES));
+    Assert.assertTrue(a.isFree(TIME_0830AM));
+    Assert.assertFalse(a.isFree(TIME_0800AM));
+  }
+
+  @Test
+  public void filtersShortRuns() {
+    MinuteBitmap bitmap = MinuteBitmap.allFree();
+    bitmap.setBusy(TimeRange.START_OF_DAY, TIME_0800AM);
+    bitmap.setBusy(TIME_0800AM + DURATION_30_MINUTES - 1, TimeRange.END_OF_DAY + 1);
+
+    Assert.assertEquals(Arrays.asList(), bitmap.freeRanges(DURATION_30_MINUTES));
+  }
+
+  @Test
+  public void matchesBusyIntervalsForCalendar() {
+    AttendeeCalendar calendar = new AttendeeCalendar(Arrays.asList(Events.events));
+    List<String> people = new ArrayList<>(calendar.getAttendees());
+
+    for (int i = 0; i < people.size(); i++) {
+      for (int j = i; j < people.size(); j++) {
+        Collection<String> attendees = Arrays.asList(people.get(i), people.get(j));
+        Assert.assertEquals(calendar.busyIntervals(attendees).freeSlots(DURATION_30_MINUTES),
+            calendar.freeMinutes(attendees).freeRanges(DURATION_30_MINUTES));
+      }
+    }
+  }
+}
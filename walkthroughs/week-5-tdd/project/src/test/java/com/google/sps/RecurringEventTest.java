@@ -0,0 +1,117 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class RecurringEventTest {
+  private static final String PERSON_A = "Person A";
+
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_0930AM = TimeRange.getTimeInMinutes(9, 30);
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  private static final TimeRange STAND_UP = TimeRange.fromStartEnd(TIME_0900AM, TIME_0930AM, false);
+
+  @Test
+  public void occurrenceStartsArePeriodic() {
+    RecurringEvent event = new RecurringEvent("Stand-up", STAND_UP, RecurringEvent.DAILY,
+        RecurringEvent.FOREVER, Arrays.asList(PERSON_A));
+
+    Assert.assertEquals(TIME_0900AM, event.occurrenceStart(0));
+    Assert.assertEquals(TimeRange.getTimeInMinutes(3, 9, 0), event.occurrenceStart(3));
+  }
+
+  @Test
+  public void firstOccurrenceEndingAfter() {
+    RecurringEvent event = new RecurringEvent(
+        "Stand-up", STAND_UP, RecurringEvent.DAILY, 5, Arrays.asList(PERSON_A));
+
+    // Before and during the first occurrence.
+    Assert.assertEquals(0, event.firstOccurrenceEndingAfter(TimeRange.START_OF_DAY));
+    Assert.assertEquals(0, event.firstOccurrenceEndingAfter(TIME_0930AM - 1));
+
+    // The first occurrence ends exactly at 9:30, so the next one is the second.
+    Assert.assertEquals(1, event.firstOccurrenceEndingAfter(TIME_0930AM));
+    Assert.assertEquals(2, event.firstOccurrenceEndingAfter(TimeRange.getTimeInMinutes(2, 9, 0)));
+
+    // Every occurrence is over.
+    Assert.assertEquals(5, event.firstOccurrenceEndingAfter(TimeRange.getTimeInMinutes(9, 0, 0)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void periodMustBePositive() {
+    new RecurringEvent("Stand-up", STAND_UP, 0, 1, Arrays.asList(PERSON_A));
+  }
+
+  @Test
+  public void weekOfDailyEventsMatchesMaterializedEvents() {
+    // A daily stand-up plus a weekly planning meeting should block the same time as the same
+    // meetings written out as one-off events.
+    TimeRange week = TimeRange.fromDays(0, 7);
+    List<RecurringEvent> recurring = Arrays.asList(
+        new RecurringEvent("Stand-up", STAND_UP, RecurringEvent.DAILY, RecurringEvent.FOREVER,
+            Arrays.asList(PERSON_A)),
+        new RecurringEvent("Planning", TimeRange.fromStartDuration(TIME_0900AM + 15, 60),
+            RecurringEvent.WEEKLY, 2, Arrays.asList(PERSON_A)));
+
+    List<Event> materialized = new ArrayList<>();
+    for (RecurringEvent event : recurring) {
+      for (int i = 0; i < event.getOccurrences(); i++) {
+        long start = event.occurrenceStart(i);
+        if (start >= week.end()) {
+          break;
+        }
+        materialized.add(new Event(event.getTitle(),
+            TimeRange.fromStartDuration((int) start, event.getFirst().duration()),
+            event.getAttendees()));
+      }
+    }
+
+    List<TimeRange> expected = BusyIntervals.of(materialized, Arrays.asList(PERSON_A))
+        .freeSlots(week, Collections.emptyList(), DURATION_30_MINUTES);
+    List<TimeRange> actual = BusyIntervals.EMPTY.freeSlots(week, recurring, DURATION_30_MINUTES);
+
+    Assert.assertEquals(expected, actual);
+    Assert.assertEquals(8, actual.size());
+  }
+
+  @Test
+  public void horizonClipsOccurrences() {
+    // Start the horizon in the middle of the second stand-up.
+    RecurringEvent event = new RecurringEvent("Stand-up", STAND_UP, RecurringEvent.DAILY,
+        RecurringEvent.FOREVER, Arrays.asList(PERSON_A));
+    int horizonStart = TimeRange.getTimeInMinutes(1, 9, 15);
+    TimeRange horizon = TimeRange.fromStartEnd(horizonStart, TimeRange.getTimeInMinutes(2, 0, 0),
+        false);
+
+    List<TimeRange> actual =
+        BusyIntervals.EMPTY.freeSlots(horizon, Arrays.asList(event), DURATION_30_MINUTES);
+    List<TimeRange> expected = Arrays.asList(
+        TimeRange.fromStartEnd(TimeRange.getTimeInMinutes(1, 9, 30), horizon.end(), false));
+
+    Assert.assertEquals(expected, actual);
+  }
+}
@@ -0,0 +1,184 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.AttendeeCalendar;
+import com.google.sps.Event;
+import com.google.sps.TimeRange;
+import com.google.gson.Gson;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class IngestEventsServletTest {
+  private static final Event[] EVENTS = {
+      new Event("Event 1", TimeRange.fromStartDuration(480, 30), Arrays.asList("Person A")),
+      new Event("Event 2", TimeRange.fromStartDuration(540, 60),
+          Arrays.asList("Person A", "Person B")),
+  };
+
+  private AttendeeCalendar oldCalendar;
+  private EncodedJson oldEvents;
+
+  private final Map<String, String> headers = new HashMap<>();
+  private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+  private final StringWriter text = new StringWriter();
+  private int status = HttpServletResponse.SC_OK;
+
+  @Before
+  public void setUp() {
+    oldCalendar = CalendarHolder.get();
+    oldEvents = CalendarHolder.events();
+  }
+
+  @After
+  public void tearDown() {
+    CalendarHolder.set(oldCalendar, oldEvents);
+  }
+
+  @Test
+  public void ingestedEventsAreServedAsGsonWouldEncodeThem() throws Exception {
+    String feed = new Gson().toJson(EVENTS);
+
+    new IngestEventsServlet().doPost(request(feed, null), response());
+
+    Assert.assertEquals(HttpServletResponse.SC_OK, status);
+    Assert.assertEquals(2, CalendarHolder.get().getAttendees().size());
+
+    body.reset();
+    new GetEventsServlet().doGet(request(null, null), response());
+    Assert.assertEquals(feed, new String(body.toByteArray(), StandardCharsets.UTF_8));
+    Assert.assertEquals(String.valueOf(feed.length()), headers.get("Content-Length"));
+    String etag = headers.get("ETag");
+
+    body.reset();
+    new GetEventsServlet().doGet(request(null, "gzip"), response());
+    Assert.assertEquals("gzip", headers.get("Content-Encoding"));
+    Assert.assertEquals(feed, gunzip(body.toByteArray()));
+    Assert.assertEquals(etag.replace("\"", "") + "-gzip", headers.get("ETag").replace("\"", ""));
+
+    Assert.assertEquals(etag, etagOf(EncodedJson.of(feed.getBytes(StandardCharsets.UTF_8))));
+  }
+
+  @Test
+  public void invalidFeedKeepsTheOldCalendar() throws Exception {
+    new IngestEventsServlet().doPost(request("[{\"title\": \"No time\"}]", null), response());
+
+    Assert.assertEquals(HttpServletResponse.SC_BAD_REQUEST, status);
+    Assert.assertSame(oldCalendar, CalendarHolder.get());
+    Assert.assertSame(oldEvents, CalendarHolder.events());
+  }
+
+  /** Returns the ETag that {@code json} is served with when gzip is not accepted. */
+  private String etagOf(EncodedJson json) throws Exception {
+    body.reset();
+    json.write(request(null, null), response());
+    return headers.get("ETag");
+  }
+
+  private static String gunzip(byte[] bytes) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      byte[] buffer = new byte[1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static HttpServletRequest request(String body, String acceptEncoding) {
+    BufferedReader reader = new BufferedReader(new StringReader(body == null ? "" : body));
+    return (HttpServletRequest) Proxy.newProxyInstance(
+        HttpServletRequest.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getReader":
+              return reader;
+            case "getHeader":
+              return args[0].equals("Accept-Encoding") ? acceptEncoding : null;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  private HttpServletResponse response() {
+    headers.clear();
+    ServletOutputStream out = new ServletOutputStream() {
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener listener) {}
+
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+    };
+    PrintWriter writer = new PrintWriter(text);
+    return (HttpServletResponse) Proxy.newProxyInstance(
+        HttpServletResponse.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getOutputStream":
+              return out;
+            case "getWriter":
+              return writer;
+            case "setHeader":
+              headers.put((String) args[0], (String) args[1]);
+              return null;
+            case "setContentLength":
+            case "setContentLengthLong":
+              headers.put("Content-Length", String.valueOf(args[0]));
+              return null;
+            case "setStatus":
+            case "sendError":
+              status = (Integer) args[0];
+              return null;
+            case "setContentType":
+              return null;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+}